@@ -0,0 +1,137 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.bacon.common.http;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.conn.ssl.TrustAllStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.ssl.SSLContextBuilder;
+import org.apache.http.ssl.SSLContexts;
+
+import javax.net.ssl.SSLContext;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared HTTP clients with pooled, kept-alive connections.
+ * <p>
+ * All the requests made with a client share its connection pool and its SSL context, so connections and TLS sessions to the
+ * same host are reused instead of being set up for every request. The clients must not be closed.
+ * <p>
+ * The clients are configured with system properties:
+ * <ul>
+ * <li><code>bacon.http.maxConnections</code> - maximum number of pooled connections, 100 by default</li>
+ * <li><code>bacon.http.maxConnectionsPerRoute</code> - maximum number of connections to a single host, 20 by default</li>
+ * <li><code>bacon.http.connectTimeout</code> - connect timeout in milliseconds, 5 minutes by default</li>
+ * <li><code>bacon.http.socketTimeout</code> - read timeout in milliseconds, 15 minutes by default</li>
+ * <li><code>bacon.http.connectionRequestTimeout</code> - how long to wait for a connection from the pool, in milliseconds, 15
+ * minutes by default</li>
+ * <li><code>bacon.http.retries</code> - how many times idempotent requests are retried on I/O errors, 5 by default</li>
+ * <li><code>bacon.http.maxIdleSeconds</code> - idle connections are closed after this time, 60 seconds by default</li>
+ * </ul>
+ */
+public class HttpTransport {
+    private static final int MAX_CONNECTIONS = Integer.getInteger("bacon.http.maxConnections", 100);
+    private static final int MAX_CONNECTIONS_PER_ROUTE = Integer.getInteger("bacon.http.maxConnectionsPerRoute", 20);
+    private static final int CONNECT_TIMEOUT = Integer.getInteger("bacon.http.connectTimeout", 300_000);
+    private static final int SOCKET_TIMEOUT = Integer.getInteger("bacon.http.socketTimeout", 900_000);
+    private static final int CONNECTION_REQUEST_TIMEOUT = Integer.getInteger("bacon.http.connectionRequestTimeout", 900_000);
+    private static final int RETRIES = Integer.getInteger("bacon.http.retries", 5);
+    private static final int MAX_IDLE_SECONDS = Integer.getInteger("bacon.http.maxIdleSeconds", 60);
+
+    private static final RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(CONNECT_TIMEOUT)
+            .setSocketTimeout(SOCKET_TIMEOUT).setConnectionRequestTimeout(CONNECTION_REQUEST_TIMEOUT).build();
+
+    private static volatile CloseableHttpClient client;
+    private static volatile CloseableHttpClient insecureClient;
+
+    private HttpTransport() {
+    }
+
+    /**
+     * @return the shared client, verifying SSL certificates
+     */
+    public static HttpClient client() {
+        if (client == null) {
+            synchronized (HttpTransport.class) {
+                if (client == null) {
+                    SSLConnectionSocketFactory sslSocketFactory = new SSLConnectionSocketFactory(
+                            SSLContexts.createSystemDefault(), SSLConnectionSocketFactory.getDefaultHostnameVerifier());
+                    client = createClient(sslSocketFactory);
+                }
+            }
+        }
+        return client;
+    }
+
+    /**
+     * @return the shared client that trusts all SSL certificates, only to be used as a fallback for hosts with certificates
+     *         that can't be verified
+     */
+    public static HttpClient insecureClient() {
+        if (insecureClient == null) {
+            synchronized (HttpTransport.class) {
+                if (insecureClient == null) {
+                    SSLContext sslContext;
+                    try {
+                        sslContext = new SSLContextBuilder().loadTrustMaterial(null, TrustAllStrategy.INSTANCE).build();
+                    } catch (GeneralSecurityException e) {
+                        throw new RuntimeException("Failed to initialize the insecure http client", e);
+                    }
+                    insecureClient = createClient(new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE));
+                }
+            }
+        }
+        return insecureClient;
+    }
+
+    /**
+     * @return the default configuration of requests, to be copied by requests that need e.g. different timeouts
+     */
+    public static RequestConfig defaultRequestConfig() {
+        return requestConfig;
+    }
+
+    private static CloseableHttpClient createClient(SSLConnectionSocketFactory sslSocketFactory) {
+        Registry<ConnectionSocketFactory> socketFactories = RegistryBuilder.<ConnectionSocketFactory> create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory()).register("https", sslSocketFactory).build();
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(socketFactories);
+        connectionManager.setMaxTotal(MAX_CONNECTIONS);
+        connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+        connectionManager.setValidateAfterInactivity(2_000);
+
+        return HttpClients.custom().setConnectionManager(connectionManager).setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+                .setRetryHandler(new DefaultHttpRequestRetryHandler(RETRIES, false))
+                // connections are not bound to a user, so that TLS connections can be reused by all the requests
+                .disableConnectionState().evictExpiredConnections().evictIdleConnections(MAX_IDLE_SECONDS, TimeUnit.SECONDS)
+                .build();
+    }
+}
@@ -39,8 +39,8 @@ import java.util.Map;
  */
 @GroupCommandDefinition(name = "pig", description = "PiG tool", groupCommands = { Pig.Configure.class, Pig.Build.class,
         Pig.GenerateRepository.class, Pig.GenerateLicenses.class, Pig.GenerateJavadocs.class, Pig.GenerateSources.class,
-        Pig.GenerateSharedContentAnalysis.class, Pig.GenerateDocuments.class, Pig.GenerateScripts.class,
-        Pig.TriggerAddOns.class })
+        Pig.GenerateSharedContentAnalysis.class, Pig.GenerateDocuments.class, Pig.GenerateNvrList.class,
+        Pig.GenerateScripts.class, Pig.TriggerAddOns.class })
 public class Pig extends AbstractCommand {
 
     private static final ObjectMapper jsonMapper = new ObjectMapper();
@@ -242,6 +242,16 @@ public class Pig extends AbstractCommand {
         }
     }
 
+    @CommandDefinition(name = "nvr-list", description = "GenerateNvrList")
+    public class GenerateNvrList extends PigCommand<String> {
+
+        @Override
+        public String doExecute() {
+            PigFacade.generateNvrList();
+            return "NVR list generated successfully";
+        }
+    }
+
     @CommandDefinition(name = "scripts", description = "GenerateScripts")
     public class GenerateScripts extends PigCommand<String> {
 
@@ -21,11 +21,14 @@ import org.jboss.pnc.bacon.pig.impl.PigContext;
 import org.jboss.pnc.bacon.pig.impl.addons.AddOn;
 import org.jboss.pnc.bacon.pig.impl.addons.AddOnFactory;
 import org.jboss.pnc.bacon.pig.impl.config.Config;
+import org.jboss.pnc.bacon.pig.impl.documents.Deliverables;
 import org.jboss.pnc.bacon.pig.impl.documents.DocumentGenerator;
 import org.jboss.pnc.bacon.pig.impl.javadoc.JavadocManager;
 import org.jboss.pnc.bacon.pig.impl.license.LicenseManager;
+import org.jboss.pnc.bacon.pig.impl.nvr.NvrListGenerator;
 import org.jboss.pnc.bacon.pig.impl.pnc.BuildConfigData;
 import org.jboss.pnc.bacon.pig.impl.pnc.BuildInfoCollector;
+import org.jboss.pnc.bacon.pig.impl.pnc.BuildPrefetcher;
 import org.jboss.pnc.bacon.pig.impl.pnc.ImportResult;
 import org.jboss.pnc.bacon.pig.impl.pnc.PncBuild;
 import org.jboss.pnc.bacon.pig.impl.pnc.PncBuilder;
@@ -33,6 +36,7 @@ import org.jboss.pnc.bacon.pig.impl.pnc.PncEntitiesImporter;
 import org.jboss.pnc.bacon.pig.impl.repo.RepoDescriptor;
 import org.jboss.pnc.bacon.pig.impl.repo.RepoManager;
 import org.jboss.pnc.bacon.pig.impl.repo.RepositoryData;
+import org.jboss.pnc.bacon.pig.impl.repo.RepositoryIndex;
 import org.jboss.pnc.bacon.pig.impl.script.ScriptGenerator;
 import org.jboss.pnc.bacon.pig.impl.sources.SourcesGenerator;
 import org.jboss.pnc.bacon.pig.impl.utils.FileUtils;
@@ -48,6 +52,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
@@ -64,6 +69,21 @@ public class PigFacade {
 
     private static final Logger log = LoggerFactory.getLogger(PigFacade.class);
 
+    /*
+     * stages of a run, in the order they are run
+     */
+    private static final String IMPORT = "import";
+    private static final String BUILDS = "builds";
+    private static final String REPOSITORY = "repository";
+    private static final String SOURCES = "sources";
+    private static final String JAVADOC = "javadoc";
+    private static final String LICENSES = "licenses";
+    private static final String SHARED_CONTENT = "sharedContent";
+    private static final String ADD_ONS = "addOns";
+    private static final String DOCUMENTS = "documents";
+    private static final String NVR_LIST = "nvrList";
+    private static final String SCRIPTS = "scripts";
+
     private PigFacade() {
     }
 
@@ -91,34 +111,46 @@ public class PigFacade {
         return getBuilds(importResult);
     }
 
+    /**
+     * Build the group, collecting the builds of the group and prefetching their deliverables as soon as they finish
+     */
+    private static Map<String, PncBuild> build(boolean tempBuild, boolean tempBuildTS, RebuildMode rebuildMode,
+            BuildPrefetcher prefetcher) {
+        ImportResult importResult = context().getPncImportResult();
+        new PncBuilder().buildAndWait(importResult.getBuildGroup(), tempBuild, tempBuildTS, rebuildMode,
+                prefetcher::buildFinished);
+        List<String> configIds = importResult.getBuildConfigs().stream().map(BuildConfigData::getId)
+                .collect(Collectors.toList());
+        // builds that were not reported as finished are collected by the prefetcher too, only the results are awaited here
+        configIds.forEach(prefetcher::buildFinished);
+        return configIds.stream().map(prefetcher::getBuild).collect(Collectors.toMap(PncBuild::getName, Function.identity()));
+    }
+
     public static String run(boolean skipRepo, boolean skipPncUpdate, boolean skipBuilds, boolean skipSources,
             boolean skipJavadoc, boolean skipLicenses, boolean skipSharedContent, boolean removeGeneratedM2Dups,
             String repoZipPath, boolean tempBuild, boolean tempBuildTS, RebuildMode rebuildMode) {
 
         PigContext context = context();
 
-        ImportResult importResult;
-        if (skipPncUpdate) {
-            importResult = readPncEntities();
-        } else {
-            importResult = importPncEntities();
-        }
-        context.setPncImportResult(importResult);
-        context.storeContext();
+        runStage(IMPORT, "PNC Import", context.fingerprint(IMPORT, skipPncUpdate),
+                () -> context.setPncImportResult(skipPncUpdate ? readPncEntities() : importPncEntities()));
+        ImportResult importResult = context.getPncImportResult();
 
-        Map<String, PncBuild> builds;
-        if (skipBuilds) {
-            log.info("Skipping builds");
-            builds = getBuilds(importResult);
-        } else {
-            if (tempBuild) {
-                log.info("Temprorary build");
+        runStage(BUILDS, "Builds", context.fingerprint(BUILDS, skipBuilds, tempBuild, tempBuildTS, rebuildMode), () -> {
+            if (skipBuilds) {
+                log.info("Skipping builds");
+                context.setBuilds(getBuilds(importResult));
+            } else {
+                if (tempBuild) {
+                    log.info("Temprorary build");
+                }
+                BuildPrefetcher prefetcher = new BuildPrefetcher(!skipSources);
+                context.setPrefetcher(prefetcher);
+                context.setBuilds(build(tempBuild, tempBuildTS, rebuildMode, prefetcher));
             }
-            builds = build(tempBuild, tempBuildTS, rebuildMode);
-        }
-
-        context.setBuilds(builds);
-        context.storeContext();
+        });
+        List<String> buildIds = context.getBuilds().values().stream().map(PncBuild::getId).sorted()
+                .collect(Collectors.toList());
 
         // TODO: there seems to be a gap between the build configs assigned to the product version
         // TODO: and build group
@@ -128,57 +160,102 @@ public class PigFacade {
         RepositoryData repo = null;
 
         if (!skipRepo) {
-            if (repoZipPath != null) {
-                repo = parseRepository(new File(repoZipPath));
+            String fingerprint = context.fingerprint(REPOSITORY, buildIds, repoZipPath, removeGeneratedM2Dups);
+            if (context.isCheckpointValid(REPOSITORY, fingerprint)) {
+                log.info("Skipping Maven Repository Generation, the repository of the previous run is up to date");
+                repo = context.getRepositoryData();
             } else {
-                repo = PigFacade.generateRepo(removeGeneratedM2Dups);
+                if (repoZipPath != null) {
+                    repo = parseRepository(new File(repoZipPath));
+                } else {
+                    repo = PigFacade.generateRepo(removeGeneratedM2Dups);
+                }
+                context.setRepositoryData(repo);
+                // the following stages read the files of the repository through its index
+                context.checkpoint(REPOSITORY, fingerprint, repo.getRepositoryPath().toFile(),
+                        repo.getIndex().getRoot().toFile());
             }
-            context.setRepositoryData(repo);
-            context.storeContext();
         } else {
             log.info("Skipping Maven Repository Generation");
         }
 
-        if (!skipSources) {
-            generateSources();
+        String releasePath = context.getReleasePath();
+        String extrasPath = context.getExtrasPath();
+        Deliverables deliverables = context.getDeliverables();
 
+        if (!skipSources) {
+            runStage(SOURCES, "Source Generation", context.fingerprint(SOURCES, buildIds), PigFacade::generateSources,
+                    new File(releasePath, deliverables.getSourceZipName()));
         } else {
             log.info("Skipping Source Generation");
         }
 
         if (!skipJavadoc) {
-            generateJavadoc();
+            runStage(JAVADOC, "Javadoc Generation", context.fingerprint(JAVADOC, buildIds), PigFacade::generateJavadoc,
+                    new File(releasePath, deliverables.getJavadocZipName()));
         } else {
             log.info("Skipping Javadoc Generation");
         }
 
         if (!skipLicenses && repo != null) {
-            generateLicenses();
+            runStage(LICENSES, "License Generation", context.fingerprint(LICENSES, buildIds), PigFacade::generateLicenses,
+                    new File(releasePath, deliverables.getLicenseZipName()));
         } else {
             log.info("Skipping License Generation");
         }
         if (!skipSharedContent && repo != null) {
-            prepareSharedContentAnalysis();
+            runStage(SHARED_CONTENT, "Shared Content Analysis", context.fingerprint(SHARED_CONTENT, buildIds),
+                    PigFacade::prepareSharedContentAnalysis, new File(extrasPath, deliverables.getSharedContentReport()));
         }
 
-        triggerAddOns();
+        runStage(ADD_ONS, "Add-ons", context.fingerprint(ADD_ONS, buildIds), PigFacade::triggerAddOns,
+                addOns().stream().map(AddOn::getOutputs).flatMap(List::stream).toArray(File[]::new));
 
         if (repo != null) {
-            generateDocuments();
+            runStage(DOCUMENTS, "Document Generation", context.fingerprint(DOCUMENTS, buildIds), PigFacade::generateDocuments,
+                    documentGenerator().getDocumentFiles().toArray(new File[0]));
         } else {
             log.info("Skipping Document Generation");
         }
 
         if (!skipRepo && repo != null) {
-            generateScripts();
+            runStage(NVR_LIST, "NVR List Generation", context.fingerprint(NVR_LIST, buildIds), PigFacade::generateNvrList,
+                    new File(releasePath, deliverables.getNvrListName()));
+        } else {
+            log.info("Skipping NVR List Generation");
+        }
+
+        if (!skipRepo && repo != null) {
+            runStage(SCRIPTS, "Release Script Generation", context.fingerprint(SCRIPTS, buildIds), PigFacade::generateScripts,
+                    new ScriptGenerator(context.getConfig(), deliverables).getScriptFiles(Paths.get(context.getTargetPath()))
+                            .toArray(new File[0]));
         } else {
             log.info("Skipping Release Script Generation");
         }
+        if (context.getPrefetcher() != null) {
+            context.getPrefetcher().close();
+            context.setPrefetcher(null);
+        }
         return "PiG run completed, the results are in: " + ""; // TODO target directory name
 
         // verifyZipContents(); TODO a separate Jenkins Job to do it?
     }
 
+    /**
+     * Run the stage, unless it has a valid checkpoint from a previous run
+     *
+     * @param outputs files and directories the stage produces, the ones that exist after the stage are recorded
+     */
+    private static void runStage(String stage, String description, String fingerprint, Runnable action, File... outputs) {
+        PigContext context = context();
+        if (context.isCheckpointValid(stage, fingerprint)) {
+            log.info("Skipping {}, its results from the previous run are up to date", description);
+        } else {
+            action.run();
+            context.checkpoint(stage, fingerprint, Arrays.stream(outputs).filter(File::exists).toArray(File[]::new));
+        }
+    }
+
     public static void generateScripts() {
         ScriptGenerator scriptGenerator = new ScriptGenerator(context().getConfig(), context().getDeliverables());
         scriptGenerator.generateReleaseScripts(context().getPncImportResult().getMilestone(),
@@ -187,10 +264,24 @@ public class PigFacade {
                 getBuildIdsToPush(context().getBuilds()));
     }
 
+    public static void generateNvrList() {
+        RepositoryData repo = context().getRepositoryData();
+        String nvrListPath = new File(context().getReleasePath(), context().getDeliverables().getNvrListName()).getPath();
+        boolean generated = repo.getIndex() != null
+                ? NvrListGenerator.generateNvrList(repo, context().getBuilds().values(), nvrListPath)
+                : NvrListGenerator.generateNvrList(repo.getRepositoryPath().toString(), nvrListPath);
+        if (!generated) {
+            throw new RuntimeException("Failed to generate the NVR list " + nvrListPath);
+        }
+    }
+
     public static void generateDocuments() {
-        DocumentGenerator docGenerator = new DocumentGenerator(context().getConfig(), context().getReleasePath(),
-                context().getExtrasPath(), context().getDeliverables());
-        docGenerator.generateDocuments(context().getBuilds(), context().getRepositoryData());
+        documentGenerator().generateDocuments(context().getBuilds(), context().getRepositoryData());
+    }
+
+    private static DocumentGenerator documentGenerator() {
+        return new DocumentGenerator(context().getConfig(), context().getReleasePath(), context().getExtrasPath(),
+                context().getDeliverables());
     }
 
     public static void prepareSharedContentAnalysis() {
@@ -209,7 +300,7 @@ public class PigFacade {
         RepositoryData repo = context().getRepositoryData();
         SourcesGenerator sourcesGenerator = new SourcesGenerator(config.getFlow().getSourcesGeneration(),
                 config.getTopLevelDirectoryPrefix() + "src",
-                context().getReleasePath() + context().getDeliverables().getSourceZipName());
+                context().getReleasePath() + context().getDeliverables().getSourceZipName(), context().getPrefetcher());
         sourcesGenerator.generateSources(builds, repo);
     }
 
@@ -241,17 +332,40 @@ public class PigFacade {
 
         FileUtils.unzip(repositoryZipPath, extracted);
 
+        RepositoryIndex index = RepositoryIndex.build(findMavenRepository(extracted));
+
         RepositoryData result = new RepositoryData();
-        result.setFiles(RepoDescriptor.listFiles(extracted));
-        result.setGavs(RepoDescriptor.listGavs(extracted));
+        result.setIndex(index);
+        result.setGavs(index.getGavs());
         result.setRepositoryPath(extracted.toPath());
         return result;
     }
 
+    /**
+     * The repository zip contains a single top level directory with the maven-repository directory in it
+     */
+    private static File findMavenRepository(File extractedZip) {
+        String mavenRepository = RepoDescriptor.MAVEN_REPOSITORY.replace("/", "");
+        File[] topLevelDirectories = extractedZip.listFiles(File::isDirectory);
+        if (topLevelDirectories != null) {
+            for (File topLevelDirectory : topLevelDirectories) {
+                File candidate = new File(topLevelDirectory, mavenRepository);
+                if (candidate.isDirectory()) {
+                    return candidate;
+                }
+            }
+        }
+        throw new RuntimeException("Unable to find " + mavenRepository + " directory in " + extractedZip);
+    }
+
     public static void triggerAddOns() {
-        AddOnFactory
+        addOns().forEach(AddOn::trigger);
+    }
+
+    private static List<AddOn> addOns() {
+        return AddOnFactory
                 .listAddOns(context().getConfig(), context().getBuilds(), context().getReleasePath(), context().getExtrasPath())
-                .stream().filter(AddOn::shouldRun).forEach(AddOn::trigger);
+                .stream().filter(AddOn::shouldRun).collect(Collectors.toList());
     }
 
     public static RepositoryData generateRepo(boolean removeGeneratedM2Dups) {
@@ -0,0 +1,44 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.bacon.pig.impl;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Record of a finished PiG stage: the fingerprint of its inputs and the files and directories it produced
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Checkpoint {
+    private String fingerprint;
+    private List<String> outputs;
+
+    /**
+     * @param fingerprint fingerprint of the current inputs of the stage
+     * @return true if the stage was run with the same inputs and all its outputs still exist
+     */
+    public boolean isValid(String fingerprint) {
+        return this.fingerprint.equals(fingerprint) && outputs.stream().map(File::new).allMatch(File::exists);
+    }
+}
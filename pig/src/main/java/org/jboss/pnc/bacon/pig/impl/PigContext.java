@@ -17,13 +17,18 @@
  */
 package org.jboss.pnc.bacon.pig.impl;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.Data;
+import org.apache.commons.codec.binary.Hex;
 import org.jboss.pnc.bacon.pig.impl.config.Config;
 import org.jboss.pnc.bacon.pig.impl.documents.Deliverables;
+import org.jboss.pnc.bacon.pig.impl.pnc.BuildPrefetcher;
 import org.jboss.pnc.bacon.pig.impl.pnc.ImportResult;
 import org.jboss.pnc.bacon.pig.impl.pnc.PncBuild;
 import org.jboss.pnc.bacon.pig.impl.repo.RepositoryData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -31,19 +36,34 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static java.lang.System.getProperty;
 
 /**
- * TODO: consider saving the latest reached state to not repeat the steps already performed
+ * State of a PiG run.
+ * <p>
+ * Every stage of a run records a {@link Checkpoint} when it finishes. When the context of a previous run is read, with
+ * <code>pig.continue</code> set, the stages with valid checkpoints are skipped, up to the first stage whose inputs or outputs
+ * have changed. That stage and all the following ones are run again.
  *
  * @author Michal Szynkiewicz, michal.l.szynkiewicz@gmail.com <br>
  *         Date: 4/1/19
  */
 @Data
 public class PigContext {
+    private static final Logger log = LoggerFactory.getLogger(PigContext.class);
+
     private static final ObjectMapper jsonMapper = new ObjectMapper();
 
     private static final String contextLocation = getProperty("pig.context.dir",
@@ -59,6 +79,24 @@ public class PigContext {
     private String releasePath;
     private String extrasPath;
 
+    /**
+     * builds and their deliverables collected while the group build is running, only available in the run that built the group
+     */
+    @JsonIgnore
+    private BuildPrefetcher prefetcher;
+
+    /**
+     * checkpoints of the finished stages, by stage name, in the order the stages were run
+     */
+    private Map<String, Checkpoint> checkpoints = new LinkedHashMap<>();
+    /**
+     * true once a stage is run in the current run, all the following stages are run too
+     */
+    @JsonIgnore
+    private boolean resumed;
+    @JsonIgnore
+    private Set<String> skippedStages = new HashSet<>();
+
     public void setConfig(Config config) {
         this.config = config;
         if (deliverables == null) {
@@ -104,6 +142,62 @@ public class PigContext {
         }
     }
 
+    /**
+     * Check if the stage can be skipped. The first stage that can't be skipped drops the checkpoints of itself and all the
+     * following stages.
+     *
+     * @param stage name of the stage
+     * @param fingerprint fingerprint of the inputs of the stage, see {@link #fingerprint(Object...)}
+     * @return true if no stage has been run yet and the stage has a valid checkpoint
+     */
+    public boolean isCheckpointValid(String stage, String fingerprint) {
+        Checkpoint checkpoint = checkpoints.get(stage);
+        if (!resumed && checkpoint != null && checkpoint.isValid(fingerprint)) {
+            skippedStages.add(stage);
+            return true;
+        }
+        if (!resumed) {
+            if (!skippedStages.isEmpty()) {
+                log.info("Resuming the previous run at stage {}", stage);
+            }
+            resumed = true;
+            // checkpoints of the following stages are no longer valid, even if the run is interrupted
+            checkpoints.keySet().retainAll(skippedStages);
+        }
+        return false;
+    }
+
+    /**
+     * Record the checkpoint of a finished stage and store the context
+     *
+     * @param stage name of the stage
+     * @param fingerprint fingerprint of the inputs of the stage
+     * @param outputs files and directories produced by the stage
+     */
+    public void checkpoint(String stage, String fingerprint, File... outputs) {
+        List<String> paths = Arrays.stream(outputs).map(File::getAbsolutePath).collect(Collectors.toList());
+        checkpoints.put(stage, new Checkpoint(fingerprint, paths));
+        storeContext();
+    }
+
+    /**
+     * @param inputs inputs of a stage, other than the configuration
+     * @return fingerprint of the configuration and the inputs
+     */
+    public String fingerprint(Object... inputs) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(jsonMapper.writerFor(Config.class).writeValueAsBytes(config));
+            for (Object input : inputs) {
+                digest.update((byte) 0);
+                digest.update(String.valueOf(input).getBytes(StandardCharsets.UTF_8));
+            }
+            return Hex.encodeHexString(digest.digest());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new RuntimeException("Failed to compute fingerprint of " + Arrays.toString(inputs), e);
+        }
+    }
+
     public void loadConfig(String config) {
         File configFile = new File(config);
         if (configFile.exists()) {
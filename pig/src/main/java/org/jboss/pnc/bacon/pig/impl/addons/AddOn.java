@@ -20,6 +20,9 @@ package org.jboss.pnc.bacon.pig.impl.addons;
 import org.jboss.pnc.bacon.pig.impl.config.Config;
 import org.jboss.pnc.bacon.pig.impl.pnc.PncBuild;
 
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -50,4 +53,11 @@ public abstract class AddOn {
     protected abstract String getName();
 
     public abstract void trigger();
+
+    /**
+     * @return files the add-on writes when it is triggered
+     */
+    public List<File> getOutputs() {
+        return Collections.emptyList();
+    }
 }
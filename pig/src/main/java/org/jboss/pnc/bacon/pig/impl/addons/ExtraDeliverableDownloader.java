@@ -20,11 +20,14 @@ package org.jboss.pnc.bacon.pig.impl.addons;
 import org.jboss.pnc.bacon.pig.impl.config.Config;
 import org.jboss.pnc.bacon.pig.impl.pnc.ArtifactWrapper;
 import org.jboss.pnc.bacon.pig.impl.pnc.PncBuild;
+import org.jboss.pnc.bacon.pig.impl.utils.BatchDownloader;
 
+import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * @author Michal Szynkiewicz, michal.l.szynkiewicz@gmail.com <br>
@@ -43,20 +46,32 @@ public class ExtraDeliverableDownloader extends AddOn {
 
     @Override
     public void trigger() {
+        BatchDownloader downloader = new BatchDownloader();
         // noinspection unchecked
-        getConfig().forEach((key, artifacts) -> downloadArtifacts(key, (List<Map<String, String>>) artifacts));
+        getConfig().forEach((key, artifacts) -> downloadArtifacts(key, (List<Map<String, String>>) artifacts, downloader));
+        downloader.await();
     }
 
-    private void downloadArtifacts(String buildName, List<Map<String, String>> artifacts) {
+    @Override
+    public List<File> getOutputs() {
+        // noinspection unchecked
+        return getConfig().values().stream().flatMap(artifacts -> ((List<Map<String, String>>) artifacts).stream())
+                .map(artifact -> targetFile(artifact.get("suffix")).toFile()).collect(Collectors.toList());
+    }
+
+    private void downloadArtifacts(String buildName, List<Map<String, String>> artifacts, BatchDownloader downloader) {
         PncBuild build = builds.get(buildName);
-        artifacts.forEach(artifact -> downloadArtifact(build, artifact.get("matching"), artifact.get("suffix")));
+        artifacts.forEach(artifact -> downloadArtifact(build, artifact.get("matching"), artifact.get("suffix"), downloader));
     }
 
-    private void downloadArtifact(PncBuild build, String pattern, String suffix) {
+    private void downloadArtifact(PncBuild build, String pattern, String suffix, BatchDownloader downloader) {
         ArtifactWrapper artifact = build.findArtifactByFileName(pattern);
+        artifact.downloadTo(targetFile(suffix).toFile(), downloader);
+    }
+
+    private Path targetFile(String suffix) {
         Path releaseDir = Paths.get(releasePath);
-        Path targetFile = releaseDir.resolve(constructFileName(suffix));
-        artifact.downloadTo(targetFile.toFile());
+        return releaseDir.resolve(constructFileName(suffix));
     }
 
     private String constructFileName(String suffix) {
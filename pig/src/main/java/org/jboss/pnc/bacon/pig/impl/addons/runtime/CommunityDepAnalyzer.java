@@ -19,6 +19,7 @@ package org.jboss.pnc.bacon.pig.impl.addons.runtime;
 
 import org.jboss.pnc.bacon.pig.impl.documents.sharedcontent.da.CommunityDependency;
 import org.jboss.pnc.bacon.pig.impl.documents.sharedcontent.da.DADao;
+import org.jboss.pnc.bacon.pig.impl.pnc.BuildLog;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,6 +27,7 @@ import java.io.File;
 import java.io.FileWriter;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * @author Michal Szynkiewicz, michal.l.szynkiewicz@gmail.com <br>
@@ -40,12 +42,13 @@ public class CommunityDepAnalyzer {
     private final List<String> downloadedForSwarm;
     private boolean skipDa = false;
 
-    public CommunityDepAnalyzer(List<String> dependencyLines, List<String> swarmLog) {
+    public CommunityDepAnalyzer(List<String> dependencyLines, BuildLog swarmLog) {
         daDao = DADao.getInstance();
-        downloadedForSwarm = swarmLog.stream().filter(line -> line.startsWith("Downloaded"))
-                .filter(line -> line.contains(".jar"))
-                // lines are of the form: Downloaded: http://... (some add. info)
-                .map(l -> l.split("\\s+")[1]).sorted().collect(Collectors.toList());
+        try (Stream<String> lines = swarmLog.lines()) {
+            downloadedForSwarm = lines.filter(line -> line.startsWith("Downloaded")).filter(line -> line.contains(".jar"))
+                    // lines are of the form: Downloaded: http://... (some add. info)
+                    .map(l -> l.split("\\s+")[1]).sorted().collect(Collectors.toList());
+        }
         dependencies = dependencyLines.stream().map(CommunityDependency::new).collect(Collectors.toList());
     }
 
@@ -72,7 +75,7 @@ public class CommunityDepAnalyzer {
     }
 
     protected List<CommunityDependency> analyzeDAResults() {
-        dependencies.parallelStream().forEach(daDao::fillDaData);
+        daDao.fillDaData(dependencies);
         return dependencies;
     }
 
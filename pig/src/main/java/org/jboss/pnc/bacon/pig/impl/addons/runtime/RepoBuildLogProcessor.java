@@ -17,11 +17,12 @@
  */
 package org.jboss.pnc.bacon.pig.impl.addons.runtime;
 
+import org.jboss.pnc.bacon.pig.impl.pnc.BuildLog;
+
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-
-import static org.apache.commons.lang3.StringUtils.join;
+import java.util.stream.Stream;
 
 /**
  * @author Michal Szynkiewicz, michal.l.szynkiewicz@gmail.com <br>
@@ -31,22 +32,25 @@ public class RepoBuildLogProcessor {
     private static final String START_TAG = "swarm_repository_listing_begin";
     private static final String END_TAG = "swarm_repository_listing_end";
 
-    public static List<String> getList(String header, List<String> buildLog) {
-        Iterator<String> logIterator = buildLog.iterator();
-        while (logIterator.hasNext()) {
-            if (header.equals(logIterator.next())) {
-                break;
+    public static List<String> getList(String header, BuildLog buildLog) {
+        try (Stream<String> lines = buildLog.lines()) {
+            Iterator<String> logIterator = lines.iterator();
+            while (logIterator.hasNext()) {
+                if (header.equals(logIterator.next())) {
+                    break;
+                }
             }
-        }
-        if (logIterator.hasNext()) {
-            if (START_TAG.equals(logIterator.next()) && logIterator.hasNext()) {
-                return takeUntilTheEnd(logIterator);
+            if (logIterator.hasNext()) {
+                if (START_TAG.equals(logIterator.next()) && logIterator.hasNext()) {
+                    return takeUntilTheEnd(logIterator);
+                } else {
+                    throw new IllegalArgumentException("Malformed repo log listing for header: " + header
+                            + " in the log of build " + buildLog.getBuildId());
+                }
             } else {
                 throw new IllegalArgumentException(
-                        "Malformed repo log listing for header: " + header + " in the log: " + join(buildLog, "\n"));
+                        "Unable to find " + header + " in the log of build " + buildLog.getBuildId());
             }
-        } else {
-            throw new IllegalArgumentException("Unable to find " + header + " in the log: " + join(buildLog, "\n"));
         }
     }
 
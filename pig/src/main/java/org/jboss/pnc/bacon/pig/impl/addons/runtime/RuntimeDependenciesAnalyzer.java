@@ -20,6 +20,7 @@ package org.jboss.pnc.bacon.pig.impl.addons.runtime;
 import org.apache.commons.io.IOUtils;
 import org.jboss.pnc.bacon.pig.impl.addons.AddOn;
 import org.jboss.pnc.bacon.pig.impl.config.Config;
+import org.jboss.pnc.bacon.pig.impl.pnc.BuildLog;
 import org.jboss.pnc.bacon.pig.impl.pnc.PncBuild;
 import org.jboss.pnc.bacon.pig.impl.utils.FileUtils;
 import org.slf4j.Logger;
@@ -30,6 +31,7 @@ import java.io.FileInputStream;
 import java.io.InputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -73,13 +75,22 @@ public class RuntimeDependenciesAnalyzer extends AddOn {
         List<String> communityDependencies = dependencies.stream().filter(d -> !d.contains("redhat"))
                 .collect(Collectors.toList());
 
-        List<String> buildLog = builds.get(referenceBuildName).getBuildLog();
+        BuildLog buildLog = builds.get(referenceBuildName).getBuildLog();
 
-        Path targetPath = Paths.get(extrasPath, "community-dependencies.csv");
+        Path targetPath = targetPath();
 
         CommunityDepAnalyzer analyzer = new CommunityDepAnalyzer(communityDependencies, buildLog);
         analyzer.skipDa(false); // TODO:
         analyzer.generateAnalysis(targetPath.toAbsolutePath().toString());
         log.info("Done");
     }
+
+    @Override
+    public List<File> getOutputs() {
+        return Collections.singletonList(targetPath().toFile());
+    }
+
+    private Path targetPath() {
+        return Paths.get(extrasPath, "community-dependencies.csv");
+    }
 }
@@ -91,8 +91,10 @@ public class BomVerifierAddon extends AddOn {
     }
 
     public List<GAV> getUnallowedUnreleasedGavs() {
-        return getDependencyGavs().filter(this::internallyBuilt).filter(this::unreleased).filter(this::notWhitelisted)
-                .collect(Collectors.toList());
+        List<GAV> internallyBuilt = getDependencyGavs().filter(this::internallyBuilt).collect(Collectors.toList());
+        Map<String, Boolean> released = mrrcSearcher.areReleased(internallyBuilt);
+        return internallyBuilt.stream().filter(gav -> !Boolean.TRUE.equals(released.get(gav.toUri())))
+                .filter(this::notWhitelisted).collect(Collectors.toList());
     }
 
     private boolean notWhitelisted(GAV gav) {
@@ -103,10 +105,6 @@ public class BomVerifierAddon extends AddOn {
         return gav.getVersion().contains("redhat");
     }
 
-    private boolean unreleased(GAV gav) {
-        return !Boolean.TRUE.equals(mrrcSearcher.isReleased(gav));
-    }
-
     protected Stream<GAV> getDependencyGavs() {
         PncBuild build = builds.get(config.getFlow().getRepositoryGeneration().getSourceBuild());
         File bom = new File("bom");
@@ -21,11 +21,14 @@ import org.jboss.pnc.bacon.pig.impl.pnc.PncBuild;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * @author Paul Gallagher, pgallagh@redhat.com <br>
@@ -49,7 +52,7 @@ public class NotYetAlignedFromDependencyTree extends AddOn {
 
     @Override
     public void trigger() {
-        String filename = extrasPath + "DependencyTreeMissingAlignment.txt";
+        String filename = reportFileName();
         PrintWriter file = null;
         log.info("Running NotYetAlignedFromDependencyTree - report is {}", filename);
         try {
@@ -57,14 +60,14 @@ public class NotYetAlignedFromDependencyTree extends AddOn {
             for (PncBuild build : builds.values()) {
                 // Make a unique list so we don't get multiples from
                 // sub-module's dependency tree list
-                List<String> bcLog = build.getBuildLog().stream().distinct().collect(Collectors.toList());
-                file.println("-------- [" + build.getId() + "] " + build.getName() + " --------");
-                for (String bcLine : bcLog) {
-                    if (bcLine.startsWith("[INFO] +") && (bcLine.endsWith(":runtime") || bcLine.endsWith(":compile"))
-                            && !bcLine.contains("redhat-")) {
-                        file.println(bcLine);
-                    }
+                List<String> notAligned;
+                try (Stream<String> bcLog = build.getBuildLog().lines()) {
+                    notAligned = bcLog.filter(bcLine -> bcLine.startsWith("[INFO] +")
+                            && (bcLine.endsWith(":runtime") || bcLine.endsWith(":compile")) && !bcLine.contains("redhat-"))
+                            .distinct().collect(Collectors.toList());
                 }
+                file.println("-------- [" + build.getId() + "] " + build.getName() + " --------");
+                notAligned.forEach(file::println);
                 file.println();
             }
         } catch (FileNotFoundException e) {
@@ -77,4 +80,13 @@ public class NotYetAlignedFromDependencyTree extends AddOn {
             }
         }
     }
+
+    @Override
+    public List<File> getOutputs() {
+        return Collections.singletonList(new File(reportFileName()));
+    }
+
+    private String reportFileName() {
+        return extrasPath + "DependencyTreeMissingAlignment.txt";
+    }
 }
@@ -37,4 +37,12 @@ public class RepoGenerationData extends GenerationData<RepoGenerationStrategy> {
     private String bomGroupId;
     private String bomArtifactId;
     private Boolean includeJavadoc;
+    /**
+     * resolve the artifacts in-process with Maven Resolver instead of building a generated project with <code>mvn</code>
+     */
+    private Boolean resolveInProcess;
+    /**
+     * repository zip of a previous milestone, if set, files that didn't change since the milestone are taken from it
+     */
+    private String baselineRepository;
 }
@@ -28,6 +28,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -67,8 +68,17 @@ public class DocumentGenerator {
         generator.generateFiles(releasePath, extrasPath, templateData);
     }
 
+    /**
+     * @return the files {@link #generateDocuments(Map, RepositoryData)} generates
+     */
+    public List<File> getDocumentFiles() {
+        return Arrays.stream(Template.values())
+                .map(template -> FileGenerator.generateOutputFile(template.isExtrasPath() ? extrasPath : releasePath, template))
+                .collect(Collectors.toList());
+    }
+
     public void generateSharedContentReport(RepositoryData repoData, Map<String, PncBuild> builds) throws IOException {
-        SharedContentReportGenerator sharedContentReportGenerator = new SharedContentReportGenerator(repoData.getFiles(),
+        SharedContentReportGenerator sharedContentReportGenerator = new SharedContentReportGenerator(repoData.getIndex(),
                 getAllBuiltArtifacts(builds));
         File reportFile = new File(extrasPath, deliverables.getSharedContentReport());
         sharedContentReportGenerator.generateReport(reportFile);
@@ -105,7 +105,7 @@ public class FileGenerator {
         }
     }
 
-    private static File generateOutputFile(String parentDir, Template template) {
+    static File generateOutputFile(String parentDir, Template template) {
         return new File(parentDir, template.getFilename());
     }
 }
@@ -22,14 +22,13 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Charsets;
 import com.google.common.io.Resources;
 import com.redhat.red.build.finder.BuildConfig;
-import com.redhat.red.build.finder.BuildFinder;
-import com.redhat.red.build.finder.DistributionAnalyzer;
 import com.redhat.red.build.finder.KojiBuild;
 import com.redhat.red.build.finder.KojiClientSession;
 import com.redhat.red.build.koji.KojiClientException;
 import com.redhat.red.build.koji.model.json.util.KojiObjectMapper;
 import com.redhat.red.build.koji.model.xmlrpc.KojiArchiveInfo;
 import com.redhat.red.build.koji.model.xmlrpc.KojiTagInfo;
+import org.jboss.pnc.bacon.pig.impl.utils.ChecksumUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,6 +41,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -98,7 +98,25 @@ public class BrewSearcher {
         }
     }
 
+    private static volatile BuildConfig config;
+
+    private static KojiClientSession session;
+
+    /**
+     * @return the Koji Build Finder configuration, read once and shared by all the lookups
+     */
     public static BuildConfig getKojiBuildFinderConfig() {
+        if (config == null) {
+            synchronized (BrewSearcher.class) {
+                if (config == null) {
+                    config = readKojiBuildFinderConfig();
+                }
+            }
+        }
+        return config;
+    }
+
+    private static BuildConfig readKojiBuildFinderConfig() {
         final String propFilename = System.getProperty(KOJI_BUILD_FINDER_CONFIG_PROP);
 
         if (propFilename != null) {
@@ -115,8 +133,19 @@ public class BrewSearcher {
     }
 
     public static void fillBrewData(SharedContentReportRow row) {
-        log.debug("Asking for {}\n", row.toGapv());
-        List<KojiBuild> builds = getBuilds(row);
+        fillBrewData(Collections.singletonList(row));
+    }
+
+    /**
+     * Fill Brew data of the rows, looking up builds of all the rows at once
+     */
+    public static void fillBrewData(Collection<SharedContentReportRow> rows) {
+        Map<Path, List<KojiBuild>> buildsByFile = getBuilds(
+                rows.stream().map(SharedContentReportRow::getFilePath).collect(Collectors.toList()));
+        rows.forEach(row -> fillBrewData(row, buildsByFile.getOrDefault(row.getFilePath(), Collections.emptyList())));
+    }
+
+    private static void fillBrewData(SharedContentReportRow row, List<KojiBuild> builds) {
         builds.forEach(build -> {
             int buildId = build.getBuildInfo().getId();
             log.debug("Got build id {} for artifact {}", buildId, row.toGapv());
@@ -132,53 +161,70 @@ public class BrewSearcher {
         });
     }
 
-    private static List<KojiBuild> getBuilds(SharedContentReportRow row) {
-        Path filePath = row.getFilePath();
-        return getBuilds(filePath);
-    }
-
     public static List<KojiBuild> getBuilds(final Path filePath) {
-        KojiClientSession session;
-        BuildConfig config;
-
-        try {
-            config = getKojiBuildFinderConfig();
-            session = new KojiClientSession(config.getKojiHubURL());
-        } catch (KojiClientException e) {
-            throw new IllegalStateException("Failed to create Koji session", e);
-        }
-
-        DistributionAnalyzer da = new DistributionAnalyzer(Collections.singletonList(filePath.toFile()), config);
-        Map<String, Collection<String>> checksumTable;
-        List<KojiBuild> buildList;
+        return getBuilds(Collections.singletonList(filePath)).getOrDefault(filePath, Collections.emptyList());
+    }
 
-        try {
-            checksumTable = da.checksumFiles().asMap();
-            BuildFinder bf = new BuildFinder(session, config);
-            Map<Integer, KojiBuild> builds = bf.findBuilds(checksumTable);
-            buildList = new ArrayList<>(builds.values());
-            buildList.sort(Comparator.comparingInt(b -> b.getBuildInfo().getId()));
-        } catch (IOException e) {
-            throw new IllegalStateException("Failed to find Koji builds", e);
-        } finally {
-            session.close();
+    /**
+     * Find Koji builds of the files. The files are checksummed in parallel and all the checksums that are not in the
+     * {@link KojiBuildCache} are resolved in a single Build Finder run, using a shared Koji session.
+     *
+     * @param filePaths files to find builds of
+     * @return builds by file, sorted by build id, files without builds are not in the map
+     */
+    public static Map<Path, List<KojiBuild>> getBuilds(final Collection<Path> filePaths) {
+        BuildConfig buildConfig = getKojiBuildFinderConfig();
+        ChecksumUtils.Algorithm algorithm = ChecksumUtils.Algorithm.fromName(buildConfig.getChecksumType().name());
+
+        Map<String, Path> filesByName = new HashMap<>();
+        filePaths.forEach(path -> filesByName.put(path.toAbsolutePath().toString(), path));
+
+        Map<String, Collection<String>> checksumTable = filesByName.entrySet().parallelStream()
+                .collect(Collectors.groupingByConcurrent(entry -> ChecksumUtils.checksum(entry.getValue(), algorithm),
+                        Collectors.mapping(Map.Entry::getKey, Collectors.toCollection(ArrayList::new))));
+        log.debug("Looking up {} checksums in Koji", checksumTable.size());
+
+        Map<String, List<KojiBuild>> buildsByChecksum = KojiBuildCache.getInstance()
+                .findBuilds(checksumTable, buildConfig, BrewSearcher::getSession).getBuildsByChecksum();
+
+        List<KojiArchiveInfo> archiveInfos = buildsByChecksum.values().stream().flatMap(Collection::stream).distinct()
+                .map(KojiBuild::getProjectSourcesTgz).filter(Objects::nonNull).collect(Collectors.toList());
+        if (!archiveInfos.isEmpty()) {
+            try {
+                getSession().enrichArchiveTypeInfo(archiveInfos);
+            } catch (KojiClientException e) {
+                throw new IllegalStateException("Failed to enrich Koji builds", e);
+            }
         }
 
-        List<KojiArchiveInfo> archiveInfos = buildList.stream().map(KojiBuild::getProjectSourcesTgz).filter(Objects::nonNull)
-                .collect(Collectors.toList());
+        // cached builds list files of the lookup they were found in, so files are mapped to builds by checksum
+        Map<Path, List<KojiBuild>> result = new HashMap<>();
+        checksumTable.forEach((checksum, files) -> {
+            List<KojiBuild> builds = buildsByChecksum.getOrDefault(checksum, Collections.emptyList());
+            if (!builds.isEmpty()) {
+                List<KojiBuild> sorted = builds.stream().sorted(Comparator.comparingInt(b -> b.getBuildInfo().getId()))
+                        .collect(Collectors.toList());
+                files.forEach(file -> result.put(filesByName.get(file), sorted));
+            }
+        });
+        result.replaceAll((file, builds) -> Collections.unmodifiableList(builds));
+        return result;
+    }
 
-        try {
-            session = new KojiClientSession(config.getKojiHubURL());
-            session.enrichArchiveTypeInfo(archiveInfos);
-        } catch (KojiClientException e) {
-            throw new IllegalStateException("Failed to enrich Koji builds", e);
-        } finally {
-            session.close();
+    /**
+     * @return Koji session shared by all the lookups, closed on shutdown
+     */
+    public static synchronized KojiClientSession getSession() {
+        if (session == null) {
+            try {
+                session = new KojiClientSession(getKojiBuildFinderConfig().getKojiHubURL());
+            } catch (KojiClientException e) {
+                throw new IllegalStateException("Failed to create Koji session", e);
+            }
+            KojiClientSession createdSession = session;
+            Runtime.getRuntime().addShutdownHook(new Thread(createdSession::close));
         }
-
-        List<KojiBuild> ret = buildList.stream().skip(1).collect(Collectors.toList());
-
-        return Collections.unmodifiableList(ret);
+        return session;
     }
 
     private static void fillBuiltBy(SharedContentReportRow row, KojiBuild build) {
@@ -18,10 +18,9 @@
 
 package org.jboss.pnc.bacon.pig.impl.documents.sharedcontent;
 
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
 import org.jboss.pnc.bacon.pig.impl.documents.sharedcontent.da.DADao;
 import org.jboss.pnc.bacon.pig.impl.documents.sharedcontent.da.DAListArtifact;
+import org.jboss.pnc.bacon.pig.impl.documents.sharedcontent.da.DAWhitelist;
 import org.jboss.pnc.bacon.pig.impl.utils.GAV;
 
 import java.util.ArrayList;
@@ -36,18 +35,15 @@ import static org.apache.commons.lang3.StringUtils.join;
  *         Date: 6/20/17
  */
 public class DASearcher {
-    private Multimap<GAV, DAListArtifact> whitelisted;
-    private DADao da;
+    private final DAWhitelist whitelist;
 
     public DASearcher() {
-        da = DADao.getInstance();
-        List<DAListArtifact> whitelist = da.getWhitelist();
-        whitelisted = Multimaps.index(whitelist, DAListArtifact::getGav);
+        whitelist = DADao.getInstance().getWhitelist();
     }
 
     public void fillDAData(SharedContentReportRow row) {
         GAV gav = row.getGav();
-        Collection<DAListArtifact> artifacts = whitelisted.get(gav);
+        Collection<DAListArtifact> artifacts = whitelist.get(gav);
         if (isNotEmpty(artifacts)) {
             List<String> productNames = new ArrayList<>();
             List<String> productVersions = new ArrayList<>();
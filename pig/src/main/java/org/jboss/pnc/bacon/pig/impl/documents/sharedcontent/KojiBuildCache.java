@@ -0,0 +1,295 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.bacon.pig.impl.documents.sharedcontent;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redhat.red.build.finder.BuildConfig;
+import com.redhat.red.build.finder.BuildFinder;
+import com.redhat.red.build.finder.ClientSession;
+import com.redhat.red.build.finder.KojiBuild;
+import com.redhat.red.build.finder.KojiLocalArchive;
+import com.redhat.red.build.koji.KojiClientException;
+import com.redhat.red.build.koji.model.json.util.KojiObjectMapper;
+import com.redhat.red.build.koji.model.xmlrpc.KojiBuildInfo;
+import com.redhat.red.build.koji.model.xmlrpc.KojiBuildState;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static java.lang.System.getProperty;
+
+/**
+ * Persistent cache of Koji builds by artifact checksum, shared between PiG runs.
+ * <p>
+ * The build that produced a file never changes, so the build ids found for a checksum are cached forever. The metadata of the
+ * builds, which includes their state and tags, can change, it is refreshed from Koji if it was stored more than
+ * <code>pig.koji.cache.buildTtlHours</code> hours ago, 24 by default. Checksums that no build was found for are cached for
+ * <code>pig.koji.cache.missTtlHours</code> hours, 24 by default. The cache is stored in <code>pig.koji.cache.dir</code>,
+ * <code>~/.cache/pig/koji</code> by default, in a subdirectory named after a hash of the Koji hub url, as build ids are only
+ * unique within a hub. The cache can be disabled with <code>pig.koji.cache.disabled</code>.
+ */
+public class KojiBuildCache {
+    private static final Logger log = LoggerFactory.getLogger(KojiBuildCache.class);
+
+    private static final String NOT_FOUND = "not found";
+
+    private static final KojiBuildCache instance = new KojiBuildCache(
+            Paths.get(getProperty("pig.koji.cache.dir", getProperty("user.home") + "/.cache/pig/koji")),
+            TimeUnit.HOURS.toMillis(Long.getLong("pig.koji.cache.missTtlHours", 24L)),
+            TimeUnit.HOURS.toMillis(Long.getLong("pig.koji.cache.buildTtlHours", 24L)),
+            getProperty("pig.koji.cache.disabled") == null);
+
+    private final Path cacheDir;
+    private final long missTtl;
+    private final long buildTtl;
+    private final boolean enabled;
+
+    private final ObjectMapper mapper = new KojiObjectMapper();
+    /**
+     * loaded builds by their cache files
+     */
+    private final Map<Path, KojiBuild> loadedBuilds = new ConcurrentHashMap<>();
+    /**
+     * cache files of loaded builds whose metadata is older than the TTL
+     */
+    private final Set<Path> staleBuilds = ConcurrentHashMap.newKeySet();
+
+    public KojiBuildCache(Path cacheDir, long missTtl, long buildTtl, boolean enabled) {
+        this.cacheDir = cacheDir;
+        this.missTtl = missTtl;
+        this.buildTtl = buildTtl;
+        this.enabled = enabled;
+    }
+
+    public static KojiBuildCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Find builds of the checksums, asking Koji only about the checksums that are not in the cache
+     *
+     * @param checksumTable file names by checksum, as produced by the build finder's distribution analyzer
+     * @param config build finder configuration
+     * @param session supplier of the Koji session, only called if some checksums are not cached or some cached builds are stale
+     * @return the builds
+     */
+    public Result findBuilds(Map<String, Collection<String>> checksumTable, BuildConfig config,
+            Supplier<? extends ClientSession> session) {
+        String checksumType = config.getChecksumType().name();
+        Path hubDir = cacheDir.resolve(Integer.toHexString(String.valueOf(config.getKojiHubURL()).hashCode()));
+        Result result = new Result();
+
+        Map<String, Collection<String>> toLookUp = new HashMap<>();
+        checksumTable.forEach((checksum, files) -> {
+            List<KojiBuild> cached = enabled ? getCached(hubDir, checksumType, checksum) : null;
+            if (cached == null) {
+                toLookUp.put(checksum, files);
+            } else {
+                result.add(checksum, cached);
+            }
+        });
+        log.debug("{} of {} checksums found in the Koji build cache", checksumTable.size() - toLookUp.size(),
+                checksumTable.size());
+        List<Path> stale = staleBuilds.stream().filter(file -> file.startsWith(hubDir)).collect(Collectors.toList());
+        if (!stale.isEmpty()) {
+            refreshBuilds(stale, session.get());
+        }
+
+        if (!toLookUp.isEmpty()) {
+            Map<Integer, KojiBuild> found = new BuildFinder(session.get(), config).findBuilds(toLookUp);
+            Map<String, String> checksumsByFile = new HashMap<>();
+            toLookUp.forEach((checksum, files) -> files.forEach(file -> checksumsByFile.put(file, checksum)));
+
+            Map<String, List<KojiBuild>> buildsByChecksum = new HashMap<>();
+            found.values().forEach(build -> {
+                result.builds.put(build.getBuildInfo().getId(), build);
+                if (build.getBuildInfo().getId() > 0) {
+                    build.getArchives().stream().map(KojiLocalArchive::getFiles).flatMap(Collection::stream)
+                            .map(checksumsByFile::get).distinct().filter(Objects::nonNull)
+                            .forEach(checksum -> buildsByChecksum.computeIfAbsent(checksum, c -> new ArrayList<>()).add(build));
+                }
+            });
+            toLookUp.keySet().forEach(checksum -> {
+                List<KojiBuild> builds = buildsByChecksum.getOrDefault(checksum, Collections.emptyList());
+                result.add(checksum, builds);
+                if (enabled) {
+                    store(hubDir, checksumType, checksum, builds);
+                }
+            });
+        }
+        result.builds.computeIfAbsent(0, id -> notFoundBuild());
+        return result;
+    }
+
+    /**
+     * @return the cached builds, empty for a cached miss, <code>null</code> if the checksum is not cached or the miss has
+     *         expired
+     */
+    private List<KojiBuild> getCached(Path hubDir, String checksumType, String checksum) {
+        Path entry = entryPath(hubDir, checksumType, checksum);
+        try {
+            if (!Files.exists(entry)) {
+                return null;
+            }
+            String content = new String(Files.readAllBytes(entry), StandardCharsets.UTF_8).trim();
+            if (content.isEmpty()) {
+                boolean expired = Files.getLastModifiedTime(entry).toMillis() + missTtl < System.currentTimeMillis();
+                return expired ? null : Collections.emptyList();
+            }
+            List<KojiBuild> builds = new ArrayList<>();
+            for (String id : content.split(",")) {
+                KojiBuild build = loadBuild(buildPath(hubDir, Integer.parseInt(id.trim())));
+                if (build == null) {
+                    return null;
+                }
+                builds.add(build);
+            }
+            return builds;
+        } catch (IOException | RuntimeException e) {
+            log.debug("Unable to read Koji build cache entry {}", entry, e);
+            return null;
+        }
+    }
+
+    private KojiBuild loadBuild(Path file) throws IOException {
+        KojiBuild build = loadedBuilds.get(file);
+        if (build == null) {
+            if (!Files.exists(file)) {
+                return null;
+            }
+            build = mapper.readValue(file.toFile(), KojiBuild.class);
+            loadedBuilds.put(file, build);
+            if (Files.getLastModifiedTime(file).toMillis() + buildTtl < System.currentTimeMillis()) {
+                staleBuilds.add(file);
+            }
+        }
+        return build;
+    }
+
+    private void store(Path hubDir, String checksumType, String checksum, List<KojiBuild> builds) {
+        try {
+            for (KojiBuild build : builds) {
+                Path file = buildPath(hubDir, build.getBuildInfo().getId());
+                // the build was just fetched from Koji, its metadata is up to date
+                write(file, mapper.writeValueAsBytes(build));
+                loadedBuilds.put(file, build);
+                staleBuilds.remove(file);
+            }
+            String ids = builds.stream().map(b -> String.valueOf(b.getBuildInfo().getId())).collect(Collectors.joining(","));
+            write(entryPath(hubDir, checksumType, checksum), ids.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            log.warn("Failed to store Koji builds of {} in the cache", checksum, e);
+        }
+    }
+
+    /**
+     * Refresh the state and the tags of the stale builds. The builds are updated in place, so that the results that contain
+     * them are updated too.
+     */
+    private void refreshBuilds(List<Path> files, ClientSession session) {
+        log.debug("Refreshing metadata of {} cached Koji builds", files.size());
+        for (Path file : files) {
+            if (!staleBuilds.remove(file)) {
+                continue;
+            }
+            KojiBuild build = loadedBuilds.get(file);
+            int id = build.getBuildInfo().getId();
+            try {
+                KojiBuildInfo buildInfo = session.getBuild(id);
+                if (buildInfo != null) {
+                    build.setBuildInfo(buildInfo);
+                }
+                build.setTags(session.listTags(id));
+                write(file, mapper.writeValueAsBytes(build));
+            } catch (KojiClientException | IOException e) {
+                log.warn("Failed to refresh Koji build {}, using the cached metadata", id, e);
+            }
+        }
+    }
+
+    private static void write(Path target, byte[] content) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".part");
+        Files.write(temp, content);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Path entryPath(Path hubDir, String checksumType, String checksum) {
+        return hubDir.resolve("checksums").resolve(checksumType).resolve(checksum.substring(0, 2)).resolve(checksum);
+    }
+
+    private static Path buildPath(Path hubDir, int id) {
+        return hubDir.resolve("builds").resolve(id + ".json");
+    }
+
+    /**
+     * The same placeholder build as the one the build finder uses for files that no build was found for
+     */
+    private static KojiBuild notFoundBuild() {
+        KojiBuildInfo buildInfo = new KojiBuildInfo();
+        buildInfo.setId(0);
+        buildInfo.setPackageId(0);
+        buildInfo.setBuildState(KojiBuildState.COMPLETE);
+        buildInfo.setName(NOT_FOUND);
+        buildInfo.setVersion(NOT_FOUND);
+        buildInfo.setRelease(NOT_FOUND);
+
+        KojiBuild build = new KojiBuild();
+        build.setBuildInfo(buildInfo);
+        build.setArchives(new ArrayList<>());
+        return build;
+    }
+
+    /**
+     * Builds found for a checksum table
+     */
+    @Getter
+    public static class Result {
+        /**
+         * all the builds by id, including build 0 for files without builds, in the same form as returned by
+         * {@link BuildFinder#findBuilds(Map)}
+         */
+        private final Map<Integer, KojiBuild> builds = new TreeMap<>();
+        private final Map<String, List<KojiBuild>> buildsByChecksum = new HashMap<>();
+
+        private void add(String checksum, List<KojiBuild> checksumBuilds) {
+            buildsByChecksum.put(checksum, checksumBuilds);
+            checksumBuilds.forEach(build -> builds.put(build.getBuildInfo().getId(), build));
+        }
+    }
+}
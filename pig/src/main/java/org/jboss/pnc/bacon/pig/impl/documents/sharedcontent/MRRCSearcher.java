@@ -18,27 +18,91 @@
 
 package org.jboss.pnc.bacon.pig.impl.documents.sharedcontent;
 
+import org.apache.http.HttpResponse;
 import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpHead;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
+import org.jboss.pnc.bacon.common.http.HttpTransport;
 import org.jboss.pnc.bacon.pig.impl.utils.GAV;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedWriter;
+import java.io.File;
 import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static java.lang.System.getProperty;
 
 /**
+ * Checks if artifacts are released to MRRC.
+ * <p>
+ * A released artifact stays released, so positive results are cached in memory and in a file in <code>pig.mrrc.cache.dir</code>
+ * (<code>~/.cache/pig/mrrc</code> by default, disabled by <code>pig.mrrc.cache.disabled</code>), shared between runs. Artifacts
+ * that are not released are cached in memory for <code>pig.mrrc.negativeTtlMinutes</code> minutes, 10 by default. Bulk checks
+ * are done with at most <code>pig.mrrc.parallelism</code> (10 by default) concurrent requests. The repository is
+ * <code>pig.mrrc.url</code>, which can also be a <code>file:</code> url of a local directory.
+ *
  * @author Michal Szynkiewicz, michal.l.szynkiewicz@gmail.com <br>
  *         Date: 6/19/17
  */
 public class MRRCSearcher {
     private static final Logger log = LoggerFactory.getLogger(MRRCSearcher.class);
 
-    private static final String mrrcBaseUrl = "https://maven.repository.redhat.com/ga/";
+    private static final String DEFAULT_MRRC_URL = "https://maven.repository.redhat.com/ga/";
+
+    private static final RequestConfig requestConfig = RequestConfig.copy(HttpTransport.defaultRequestConfig())
+            .setConnectTimeout(30_000).setConnectionRequestTimeout(30_000).build();
+
+    private static final MRRCSearcher instance = new MRRCSearcher(getProperty("pig.mrrc.url", DEFAULT_MRRC_URL),
+            getProperty("pig.mrrc.cache.disabled") == null
+                    ? new File(getProperty("pig.mrrc.cache.dir", getProperty("user.home") + "/.cache/pig/mrrc"))
+                    : null,
+            TimeUnit.MINUTES.toMillis(Long.getLong("pig.mrrc.negativeTtlMinutes", 10L)),
+            Integer.getInteger("pig.mrrc.parallelism", 10));
 
-    private static final MRRCSearcher instance = new MRRCSearcher();
+    private final String mrrcBaseUrl;
+    private final File cacheFile;
+    private final long negativeTtl;
+    private final int parallelism;
+
+    private final Set<String> released = ConcurrentHashMap.newKeySet();
+    /**
+     * expiration times of the negative results, by artifact path
+     */
+    private final Map<String, Long> notReleased = new ConcurrentHashMap<>();
+    private volatile boolean cacheLoaded;
+
+    /**
+     * @param mrrcBaseUrl url of the repository, http(s) or file
+     * @param cacheDir directory of the persistent cache of released artifacts, <code>null</code> to disable it
+     * @param negativeTtl how long, in milliseconds, artifacts that are not released are cached
+     * @param parallelism maximum number of concurrent requests of a bulk check
+     */
+    public MRRCSearcher(String mrrcBaseUrl, File cacheDir, long negativeTtl, int parallelism) {
+        this.mrrcBaseUrl = mrrcBaseUrl.endsWith("/") ? mrrcBaseUrl : mrrcBaseUrl + "/";
+        this.cacheFile = cacheDir == null ? null
+                : new File(cacheDir, "released-" + Integer.toHexString(this.mrrcBaseUrl.hashCode()) + ".txt");
+        this.negativeTtl = negativeTtl;
+        this.parallelism = parallelism;
+    }
 
     public static MRRCSearcher getInstance() {
         return instance;
@@ -49,23 +113,139 @@ public class MRRCSearcher {
         row.setReleased(isReleased(row.getGav()));
     }
 
+    /**
+     * Fill MRRC data of the rows, checking the artifacts concurrently
+     */
+    public void fillMRRCData(Collection<SharedContentReportRow> rows) {
+        Map<String, Boolean> releasedByPath = checkAll(
+                rows.stream().map(row -> row.getGav().toUri()).collect(Collectors.toList()));
+        rows.forEach(row -> row.setReleased(releasedByPath.get(row.getGav().toUri())));
+    }
+
+    /**
+     * @return true if the artifact is released, false if it is not, <code>null</code> if MRRC could not be asked
+     */
     public Boolean isReleased(GAV gav) {
-        HttpHead request = new HttpHead(uriForRow(gav));
-        RequestConfig.Builder requestBuilder = RequestConfig.custom();
-        requestBuilder = requestBuilder.setConnectTimeout(30_000);
-        requestBuilder = requestBuilder.setConnectionRequestTimeout(30_000);
-        try (CloseableHttpClient client = HttpClientBuilder.create().build();
-                CloseableHttpResponse response = client.execute(request)) {
+        String path = gav.toUri();
+        Boolean cached = getCached(path);
+        return cached != null ? cached : check(path);
+    }
+
+    /**
+     * Check many artifacts at once, with at most <code>pig.mrrc.parallelism</code> concurrent requests. The results are keyed
+     * by the repository paths of the artifacts, as {@link GAV}s that differ only in classifier or packaging are equal.
+     *
+     * @return released state of the artifacts by {@link GAV#toUri()}, as returned by {@link #isReleased(GAV)}
+     */
+    public Map<String, Boolean> areReleased(Collection<GAV> gavs) {
+        return checkAll(gavs.stream().map(GAV::toUri).collect(Collectors.toList()));
+    }
+
+    private Map<String, Boolean> checkAll(Collection<String> paths) {
+        Map<String, Boolean> result = new HashMap<>();
+        List<String> toCheck = new ArrayList<>();
+        for (String path : new LinkedHashSet<>(paths)) {
+            Boolean cached = getCached(path);
+            if (cached == null) {
+                toCheck.add(path);
+            } else {
+                result.put(path, cached);
+            }
+        }
+        if (toCheck.isEmpty()) {
+            return result;
+        }
+        log.debug("Checking {} artifacts in MRRC, {} were cached", toCheck.size(), result.size());
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, toCheck.size()));
+        try {
+            Map<String, Future<Boolean>> results = new HashMap<>();
+            for (String path : toCheck) {
+                results.put(path, executor.submit(() -> check(path)));
+            }
+            for (Map.Entry<String, Future<Boolean>> entry : results.entrySet()) {
+                result.put(entry.getKey(), entry.getValue().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while checking artifacts in MRRC", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to check artifacts in MRRC", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return result;
+    }
+
+    private Boolean getCached(String path) {
+        loadCache();
+        if (released.contains(path)) {
+            return true;
+        }
+        Long expiration = notReleased.get(path);
+        if (expiration != null && expiration > System.currentTimeMillis()) {
+            return false;
+        }
+        return null;
+    }
+
+    private Boolean check(String path) {
+        Boolean result = mrrcBaseUrl.startsWith("file:") ? Files.isRegularFile(Paths.get(URI.create(mrrcBaseUrl + path)))
+                : head(path);
+        if (Boolean.TRUE.equals(result)) {
+            markReleased(path);
+        } else if (Boolean.FALSE.equals(result)) {
+            notReleased.put(path, System.currentTimeMillis() + negativeTtl);
+        }
+        return result;
+    }
+
+    private Boolean head(String path) {
+        HttpHead request = new HttpHead(mrrcBaseUrl + path);
+        request.setConfig(requestConfig);
+        try {
+            // a response to HEAD has no content, the connection is released right away
+            HttpResponse response = HttpTransport.client().execute(request);
             int statusCode = response.getStatusLine().getStatusCode();
             return statusCode == 200;
         } catch (IOException e) {
-            log.error("Failed to get data for {} from MRRC", gav, e);
+            log.error("Failed to get data for {} from MRRC", path, e);
             return null;
         }
     }
 
-    private String uriForRow(GAV gav) {
-        String uriSuffix = gav.toUri();
-        return mrrcBaseUrl + uriSuffix;
+    private void loadCache() {
+        if (cacheLoaded) {
+            return;
+        }
+        synchronized (this) {
+            if (!cacheLoaded) {
+                if (cacheFile != null && cacheFile.isFile()) {
+                    try {
+                        Files.readAllLines(cacheFile.toPath(), StandardCharsets.UTF_8).stream().map(String::trim)
+                                .filter(line -> !line.isEmpty()).forEach(released::add);
+                    } catch (IOException e) {
+                        log.warn("Unable to read MRRC cache {}", cacheFile, e);
+                    }
+                }
+                cacheLoaded = true;
+            }
+        }
+    }
+
+    private void markReleased(String path) {
+        if (!released.add(path) || cacheFile == null) {
+            return;
+        }
+        synchronized (this) {
+            cacheFile.getParentFile().mkdirs();
+            try (BufferedWriter writer = Files.newBufferedWriter(cacheFile.toPath(), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(path);
+                writer.newLine();
+            } catch (IOException e) {
+                log.warn("Unable to store {} in MRRC cache {}", path, cacheFile, e);
+            }
+        }
     }
 }
@@ -18,22 +18,39 @@
 
 package org.jboss.pnc.bacon.pig.impl.documents.sharedcontent;
 
-import org.jboss.pnc.bacon.pig.impl.repo.RepoDescriptor;
+import org.apache.commons.collections4.ListUtils;
+import org.jboss.pnc.bacon.pig.impl.repo.RepositoryIndex;
 import org.jboss.pnc.bacon.pig.impl.utils.GAV;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.Collection;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
+ * Report of the artifacts of the repository that are not built by the project, with their products, Brew builds and release
+ * state.
+ * <p>
+ * The rows are processed in batches of <code>pig.sharedContent.batchSize</code> rows (200 by default) on a dedicated executor
+ * of <code>pig.sharedContent.threads</code> threads (8 by default). At most <code>pig.sharedContent.brewConcurrency</code> (2
+ * by default) batches look up Brew builds at the same time and at most <code>pig.sharedContent.mrrcConcurrency</code> (4 by
+ * default) check MRRC at the same time. Batches are written to the report as soon as they, and all the batches before them, are
+ * done.
+ *
  * @author Michal Szynkiewicz, michal.l.szynkiewicz@gmail.com <br>
  *         Date: 6/19/17
  */
@@ -42,65 +59,131 @@ public class SharedContentReportGenerator {
 
     private static final String[] IGNORED = { "md5", "sha1", "-sources", "example-settings.xml", "README" };
 
-    private final Collection<File> repositoryFiles;
+    private static final int THREADS = Integer.getInteger("pig.sharedContent.threads", 8);
+    private static final int BATCH_SIZE = Integer.getInteger("pig.sharedContent.batchSize", 200);
+
+    private final Semaphore brewPermits = new Semaphore(Integer.getInteger("pig.sharedContent.brewConcurrency", 2));
+    private final Semaphore mrrcPermits = new Semaphore(Integer.getInteger("pig.sharedContent.mrrcConcurrency", 4));
+
+    private final RepositoryIndex repository;
     private final DASearcher daSearcher = new DASearcher();
     private final Set<GAV> projectsArtifacts;
     private Integer limit;
-    private AtomicInteger analyzed = new AtomicInteger(0);
 
-    public SharedContentReportGenerator(Set<GAV> projectsArtifacts, Collection<File> repositoryFiles, Integer limit) {
-        this.repositoryFiles = repositoryFiles;
+    public SharedContentReportGenerator(Set<GAV> projectsArtifacts, RepositoryIndex repository, Integer limit) {
+        this.repository = repository;
         this.limit = limit;
         this.projectsArtifacts = projectsArtifacts;
     }
 
-    public SharedContentReportGenerator(Collection<File> repositoryFiles, Set<GAV> projectsArtifacts) {
-        this(projectsArtifacts, repositoryFiles, null);
+    public SharedContentReportGenerator(RepositoryIndex repository, Set<GAV> projectsArtifacts) {
+        this(projectsArtifacts, repository, null);
     }
 
     public void generateReport(File reportFile) throws IOException {
-        StringBuilder output = generateReportString();
-        try (FileWriter fileWriter = new FileWriter(reportFile)) {
-            fileWriter.append(output.toString());
+        try (Writer writer = Files.newBufferedWriter(reportFile.toPath(), StandardCharsets.UTF_8)) {
+            generateReport(writer);
         }
     }
 
-    protected StringBuilder generateReportString() {
-        StringBuilder output = new StringBuilder(
+    protected void generateReport(Writer output) throws IOException {
+        output.write(
                 "Artifact;Product name; Product version; " + "Released?; Build id; Build Author; Candidate tags; All tags\n");
-        List<SharedContentReportRow> rows = repositoryFiles.stream()
-                .filter(f -> Stream.of(IGNORED).noneMatch(f.getAbsolutePath()::contains))
-                .map(f -> new SharedContentReportRow(f, RepoDescriptor.MAVEN_REPOSITORY))
+        List<SharedContentReportRow> rows = repository.stream()
+                .filter(entry -> Stream.of(IGNORED).noneMatch(entry.getPath()::contains))
+                .map(entry -> new SharedContentReportRow(entry.getGav(), repository.fileOf(entry).toPath()))
                 .filter(r -> !projectsArtifacts.contains(r.getGav())).collect(Collectors.toList());
         if (limit == null) {
             limit = rows.size();
         }
         rows = rows.subList(0, limit);
         log.info("Gathering data for shared content report");
-        rows.parallelStream().forEach(this::fill);
-        rows.stream().sorted(SharedContentReportRow::byProductAndGav).forEach(r -> r.printTo(output));
-        return output;
-    }
+        // the whitelist is in memory, the products of all the rows are known before the rows are sorted
+        rows.forEach(daSearcher::fillDAData);
+        rows.sort(SharedContentReportRow::byProductAndGav);
 
-    private void fill(SharedContentReportRow row) {
-        log.debug("Will fill {}", row.toGapv());
-        daSearcher.fillDAData(row);
-        if (row.getProductName() == null || row.getProductVersion() == null) {
-            int attempts = 3;
-            for (int i = 0; i < attempts; i++) {
-                try {
-                    BrewSearcher.fillBrewData(row);
-                    break;
-                } catch (Exception e) {
-                    log.debug(
-                            "Failed to fill Brew data to shared content report row, attempt " + (i + 1) + " out of " + attempts,
-                            e);
+        List<List<SharedContentReportRow>> batches = ListUtils.partition(rows, BATCH_SIZE);
+        AtomicInteger analyzed = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "shared-content-report");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (List<SharedContentReportRow> batch : batches) {
+                results.add(executor.submit(() -> {
+                    fillData(batch);
+                    log.debug("Analyzed {}/{}", analyzed.addAndGet(batch.size()), limit);
+                    return null;
+                }));
+            }
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < batches.size(); i++) {
+                results.get(i).get();
+                for (SharedContentReportRow row : batches.get(i)) {
+                    line.setLength(0);
+                    row.printTo(line);
+                    output.append(line);
                 }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while generating shared content report", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to gather data for shared content report", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void fillData(List<SharedContentReportRow> batch) throws InterruptedException {
+        List<SharedContentReportRow> withoutProduct = batch.stream()
+                .filter(row -> row.getProductName() == null || row.getProductVersion() == null).collect(Collectors.toList());
+        if (!withoutProduct.isEmpty()) {
+            brewPermits.acquire();
+            try {
+                fillBrewData(withoutProduct);
+            } finally {
+                brewPermits.release();
+            }
+        }
+
+        mrrcPermits.acquire();
+        try {
+            MRRCSearcher.getInstance().fillMRRCData(batch);
+        } finally {
+            mrrcPermits.release();
+        }
+    }
+
+    /**
+     * Brew data of all the rows is looked up at once. If that keeps failing, e.g. because of a single problematic artifact, the
+     * rows are split in halves that are looked up separately, down to single rows
+     */
+    private void fillBrewData(List<SharedContentReportRow> rows) {
+        fillBrewData(rows, 3);
+    }
+
+    private void fillBrewData(List<SharedContentReportRow> rows, int attempts) {
+        Exception failure = null;
+        for (int i = 0; i < attempts; i++) {
+            try {
+                BrewSearcher.fillBrewData(rows);
+                return;
+            } catch (Exception e) {
+                log.debug("Failed to fill Brew data to shared content report rows, attempt {} out of {}", i + 1, attempts, e);
+                failure = e;
+            }
         }
-        MRRCSearcher.getInstance().fillMRRCData(row);
-        if (log.isDebugEnabled()) {
-            System.out.printf("Analyzed %d/%d\r", analyzed.incrementAndGet(), limit);
+        if (rows.size() == 1) {
+            log.warn("Failed to fill Brew data for {}", rows.get(0).toGapv(), failure);
+            return;
         }
+        log.warn("Failed to fill Brew data to {} shared content report rows, looking them up in smaller batches", rows.size(),
+                failure);
+        int half = rows.size() / 2;
+        fillBrewData(rows.subList(0, half), 1);
+        fillBrewData(rows.subList(half, rows.size()), 1);
     }
 }
@@ -23,7 +23,6 @@ import lombok.experimental.Delegate;
 import org.apache.commons.lang3.StringUtils;
 import org.jboss.pnc.bacon.pig.impl.utils.GAV;
 
-import java.io.File;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -50,10 +49,9 @@ public class SharedContentReportRow {
 
     private Path filePath;
 
-    public SharedContentReportRow(File file, String repoDirName) {
-        gav = GAV.fromFileName(file.getAbsolutePath(), repoDirName);
-
-        filePath = file.toPath();
+    public SharedContentReportRow(GAV gav, Path filePath) {
+        this.gav = gav;
+        this.filePath = filePath;
     }
 
     /**
@@ -18,10 +18,10 @@
 package org.jboss.pnc.bacon.pig.impl.documents.sharedcontent.da;
 
 import org.apache.commons.lang3.StringUtils;
-import org.jboss.bacon.da.rest.ListingsApi;
 import org.jboss.bacon.da.rest.LookupReportDto;
 import org.jboss.bacon.da.rest.ReportsApi;
-import org.jboss.da.listings.model.rest.RestProductGAV;
+import org.apache.commons.collections4.ListUtils;
+import org.jboss.da.model.rest.GAV;
 import org.jboss.da.reports.model.request.LookupGAVsRequest;
 import org.jboss.pnc.bacon.config.Config;
 import org.jboss.pnc.bacon.config.DaConfig;
@@ -29,9 +29,17 @@ import org.jboss.resteasy.client.jaxrs.ResteasyClientBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 /**
@@ -41,20 +49,77 @@ import java.util.stream.Collectors;
 public class DADao {
     private static final Logger log = LoggerFactory.getLogger(DADao.class);
 
+    private static final int BATCH_SIZE = Integer.getInteger("pig.da.batchSize", 100);
+    private static final int PARALLEL_BATCHES = Integer.getInteger("pig.da.parallelBatches", 4);
+
     private final ReportsApi reportsClient;
-    private final ListingsApi listingsClient;
+    private final String daUrl;
+    private DAWhitelist whitelist;
 
     public DADao(DaConfig daConfig) {
-        reportsClient = new ResteasyClientBuilder().build().target(daConfig.getUrl()).proxy(ReportsApi.class);
+        reportsClient = new ResteasyClientBuilder().connectionPoolSize(PARALLEL_BATCHES).maxPooledPerRoute(PARALLEL_BATCHES)
+                .build().target(daConfig.getUrl()).proxy(ReportsApi.class);
 
-        listingsClient = new ResteasyClientBuilder().build().target(daConfig.getUrl()).proxy(ListingsApi.class);
+        daUrl = daConfig.getUrl();
     }
 
     public void fillDaData(CommunityDependency dependency) {
-        log.debug("Starting analysis for: {}", dependency);
-        LookupGAVsRequest lookupRequest = new LookupGAVsRequest(Collections.singletonList(dependency.toDaGav()));
-        List<LookupReportDto> lookupReports = reportsClient.lookupGav(lookupRequest);
-        LookupReportDto lookupReport = getSingle(lookupReports);
+        fillDaData(Collections.singletonList(dependency));
+    }
+
+    /**
+     * Look up DA data for the dependencies. The lookups are sent in batches of <code>pig.da.batchSize</code> dependencies, at
+     * most <code>pig.da.parallelBatches</code> batches at a time.
+     *
+     * @param dependencies dependencies to fill the DA data in
+     */
+    public void fillDaData(Collection<CommunityDependency> dependencies) {
+        Map<String, List<CommunityDependency>> dependenciesByGav = dependencies.stream()
+                .collect(Collectors.groupingBy(DADao::gavKey, LinkedHashMap::new, Collectors.toList()));
+        List<List<String>> batches = ListUtils.partition(new ArrayList<>(dependenciesByGav.keySet()), BATCH_SIZE);
+        log.debug("Looking up {} dependencies in DA in {} batches", dependenciesByGav.size(), batches.size());
+
+        ExecutorService executor = Executors.newFixedThreadPool(PARALLEL_BATCHES);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (List<String> batch : batches) {
+                results.add(executor.submit(() -> lookup(batch, dependenciesByGav)));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while looking up dependencies in DA", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to look up dependencies in DA", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void lookup(List<String> batch, Map<String, List<CommunityDependency>> dependenciesByGav) {
+        List<GAV> gavs = batch.stream().map(key -> dependenciesByGav.get(key).get(0).toDaGav()).collect(Collectors.toList());
+        List<LookupReportDto> lookupReports = reportsClient.lookupGav(new LookupGAVsRequest(gavs));
+        Map<String, LookupReportDto> reportsByGav = new HashMap<>();
+        lookupReports.forEach(report -> reportsByGav.put(gavKey(report), report));
+
+        for (int i = 0; i < batch.size(); i++) {
+            LookupReportDto report = reportsByGav.get(batch.get(i));
+            if (report == null && lookupReports.size() == batch.size()) {
+                // the reports are in the order of the request, even if DA reports a differently formatted version
+                report = lookupReports.get(i);
+            }
+            if (report == null) {
+                throw new RuntimeException("No DA report for " + batch.get(i));
+            }
+            for (CommunityDependency dependency : dependenciesByGav.get(batch.get(i))) {
+                fillDaData(dependency, report);
+            }
+        }
+    }
+
+    private static void fillDaData(CommunityDependency dependency, LookupReportDto lookupReport) {
         String bestMatchVersion = lookupReport.getBestMatchVersion();
         String availableVersions = String.join(",", lookupReport.getAvailableVersions());
 
@@ -72,17 +137,22 @@ public class DADao {
         log.debug("Done for: {}", dependency);
     }
 
-    private LookupReportDto getSingle(List<LookupReportDto> lookupReports) {
-        if (lookupReports.size() != 1) {
-            throw new RuntimeException("Expected exactly one report, got: " + lookupReports.size());
-        }
-        return lookupReports.get(0);
+    private static String gavKey(CommunityDependency dependency) {
+        return dependency.getGroupId() + ":" + dependency.getArtifactId() + ":" + dependency.getVersion();
     }
 
-    public List<DAListArtifact> getWhitelist() {
-        Collection<RestProductGAV> allWhiteArtifacts = listingsClient.getAllWhiteArtifacts();
+    private static String gavKey(LookupReportDto report) {
+        return report.getGroupId() + ":" + report.getArtifactId() + ":" + report.getVersion();
+    }
 
-        return allWhiteArtifacts.stream().map(DAListArtifact::new).collect(Collectors.toList());
+    /**
+     * @return the whitelist, loaded once and shared by all the consumers
+     */
+    public synchronized DAWhitelist getWhitelist() {
+        if (whitelist == null) {
+            whitelist = DAWhitelist.load(daUrl);
+        }
+        return whitelist;
     }
 
     private static DADao instance;
@@ -41,4 +41,11 @@ public class DAListArtifact {
         productVersion = daGavWithProduct.getVersion();
         state = daGavWithProduct.getSupportStatus().name();
     }
+
+    public DAListArtifact(GAV gav, String productName, String productVersion, String state) {
+        this.gav = gav;
+        this.productName = productName;
+        this.productVersion = productVersion;
+        this.state = state;
+    }
 }
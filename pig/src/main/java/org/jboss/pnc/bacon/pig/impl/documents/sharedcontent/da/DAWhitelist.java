@@ -0,0 +1,276 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.bacon.pig.impl.documents.sharedcontent.da;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.jboss.da.listings.model.rest.RestProductGAV;
+import org.jboss.pnc.bacon.common.http.HttpTransport;
+import org.jboss.pnc.bacon.pig.impl.utils.GAV;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Whitelist of DA, indexed by groupId:artifactId.
+ * <p>
+ * The whitelist is parsed from the DA response as a stream, one artifact at a time, straight into the index. The index is
+ * stored in <code>pig.da.whitelist.cacheDir</code> (<code>~/.cache/pig/da</code> by default) and reused for
+ * <code>pig.da.whitelist.ttlMinutes</code> minutes (60 by default). After that, it is revalidated with a conditional request
+ * and only downloaded again if the whitelist changed.
+ */
+public class DAWhitelist {
+    private static final Logger log = LoggerFactory.getLogger(DAWhitelist.class);
+
+    private static final long TTL = TimeUnit.MINUTES.toMillis(Long.getLong("pig.da.whitelist.ttlMinutes", 60L));
+    private static final File CACHE_DIR = new File(
+            System.getProperty("pig.da.whitelist.cacheDir", System.getProperty("user.home") + "/.cache/pig/da"));
+
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "lastModified";
+
+    /**
+     * products of artifacts, by groupId:artifactId
+     */
+    private final Map<String, List<Product>> productsByGa = new HashMap<>();
+    /**
+     * product names, versions and states repeat a lot, they are stored once
+     */
+    private final Map<String, String> strings = new HashMap<>();
+    private int size;
+
+    private DAWhitelist() {
+    }
+
+    /**
+     * @return artifacts of the whitelist with the same groupId, artifactId and version as the gav
+     */
+    public List<DAListArtifact> get(GAV gav) {
+        return productsByGa.getOrDefault(ga(gav.getGroupId(), gav.getArtifactId()), Collections.emptyList()).stream()
+                .filter(product -> product.version.equals(gav.getVersion()))
+                .map(product -> new DAListArtifact(new GAV(gav.getGroupId(), gav.getArtifactId(), product.version, null),
+                        product.name, product.productVersion, product.state))
+                .collect(Collectors.toList());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Load the whitelist from the cache, revalidating or downloading it if needed
+     *
+     * @param daUrl url of DA
+     * @return the whitelist
+     */
+    public static DAWhitelist load(String daUrl) {
+        String whitelistUrl = daUrl.replaceAll("/+$", "") + "/listings/whitelist";
+        String cacheName = "whitelist-" + Integer.toHexString(whitelistUrl.hashCode());
+        Path indexFile = new File(CACHE_DIR, cacheName + ".tsv").toPath();
+        Path metadataFile = new File(CACHE_DIR, cacheName + ".properties").toPath();
+
+        try {
+            if (Files.exists(indexFile) && Files.exists(metadataFile)) {
+                if (Files.getLastModifiedTime(indexFile).toMillis() + TTL > System.currentTimeMillis()) {
+                    log.debug("Using cached DA whitelist {}", indexFile);
+                    return read(indexFile);
+                }
+                DAWhitelist whitelist = download(whitelistUrl, indexFile, metadataFile, readMetadata(metadataFile));
+                return whitelist != null ? whitelist : read(indexFile);
+            }
+        } catch (IOException e) {
+            log.warn("Unable to use the cached DA whitelist {}, downloading it", indexFile, e);
+        }
+        try {
+            return download(whitelistUrl, indexFile, metadataFile, new Properties());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to download DA whitelist from " + whitelistUrl, e);
+        }
+    }
+
+    /**
+     * @return the downloaded whitelist, or <code>null</code> if the cached whitelist is still valid
+     */
+    private static DAWhitelist download(String url, Path indexFile, Path metadataFile, Properties metadata) throws IOException {
+        HttpGet request = new HttpGet(url);
+        request.setHeader("Accept", "application/json");
+        if (metadata.getProperty(ETAG) != null) {
+            request.setHeader("If-None-Match", metadata.getProperty(ETAG));
+        }
+        if (metadata.getProperty(LAST_MODIFIED) != null) {
+            request.setHeader("If-Modified-Since", metadata.getProperty(LAST_MODIFIED));
+        }
+
+        HttpResponse response = HttpTransport.client().execute(request);
+        try {
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode == HttpStatus.SC_NOT_MODIFIED) {
+                log.debug("DA whitelist did not change");
+                Files.setLastModifiedTime(indexFile, FileTime.fromMillis(System.currentTimeMillis()));
+                return null;
+            }
+            if (statusCode != HttpStatus.SC_OK) {
+                throw new IOException("Invalid status code " + statusCode + " for " + url);
+            }
+
+            DAWhitelist whitelist = new DAWhitelist();
+            try (InputStream input = response.getEntity().getContent()) {
+                whitelist.parse(input);
+            }
+            log.info("Downloaded DA whitelist with {} artifacts", whitelist.size);
+
+            Properties newMetadata = new Properties();
+            copyHeader(response, "ETag", newMetadata, ETAG);
+            copyHeader(response, "Last-Modified", newMetadata, LAST_MODIFIED);
+            whitelist.store(indexFile, metadataFile, newMetadata);
+            return whitelist;
+        } finally {
+            EntityUtils.consumeQuietly(response.getEntity());
+        }
+    }
+
+    private void parse(InputStream input) throws IOException {
+        ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        try (JsonParser parser = mapper.getFactory().createParser(input)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("DA whitelist is not a json array");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                RestProductGAV artifact = mapper.readValue(parser, RestProductGAV.class);
+                add(artifact.getGav().getGroupId(), artifact.getGav().getArtifactId(), artifact.getGav().getVersion(),
+                        artifact.getName(), artifact.getVersion(),
+                        artifact.getSupportStatus() == null ? null : artifact.getSupportStatus().name());
+            }
+        }
+    }
+
+    private void add(String groupId, String artifactId, String version, String name, String productVersion, String state) {
+        productsByGa.computeIfAbsent(ga(groupId, artifactId), ga -> new ArrayList<>(1))
+                .add(new Product(version, shared(name), shared(productVersion), shared(state)));
+        size++;
+    }
+
+    private String shared(String value) {
+        return value == null ? null : strings.computeIfAbsent(value, v -> v);
+    }
+
+    private static String ga(String groupId, String artifactId) {
+        return groupId + ":" + artifactId;
+    }
+
+    private static DAWhitelist read(Path indexFile) throws IOException {
+        DAWhitelist whitelist = new DAWhitelist();
+        try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 6) {
+                    throw new IOException("Invalid line in " + indexFile + ": " + line);
+                }
+                whitelist.add(fields[0], fields[1], fields[2], nullIfEmpty(fields[3]), nullIfEmpty(fields[4]),
+                        nullIfEmpty(fields[5]));
+            }
+        }
+        return whitelist;
+    }
+
+    private void store(Path indexFile, Path metadataFile, Properties metadata) {
+        try {
+            Files.createDirectories(indexFile.getParent());
+            Path tempIndex = Files.createTempFile(indexFile.getParent(), "whitelist", ".part");
+            try (BufferedWriter writer = Files.newBufferedWriter(tempIndex, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, List<Product>> entry : productsByGa.entrySet()) {
+                    String[] ga = entry.getKey().split(":", 2);
+                    for (Product product : entry.getValue()) {
+                        writer.write(String.join("\t", ga[0], ga[1], product.version, emptyIfNull(product.name),
+                                emptyIfNull(product.productVersion), emptyIfNull(product.state)));
+                        writer.newLine();
+                    }
+                }
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(metadataFile, StandardCharsets.UTF_8)) {
+                metadata.store(writer, null);
+            }
+            Files.move(tempIndex, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Failed to store DA whitelist in {}", indexFile, e);
+        }
+    }
+
+    private static Properties readMetadata(Path metadataFile) throws IOException {
+        Properties metadata = new Properties();
+        try (BufferedReader reader = Files.newBufferedReader(metadataFile, StandardCharsets.UTF_8)) {
+            metadata.load(reader);
+        }
+        return metadata;
+    }
+
+    private static void copyHeader(HttpResponse response, String header, Properties metadata, String key) {
+        Header value = response.getFirstHeader(header);
+        if (value != null) {
+            metadata.setProperty(key, value.getValue());
+        }
+    }
+
+    private static String nullIfEmpty(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    private static String emptyIfNull(String value) {
+        return value == null ? "" : value.replace('\t', ' ').replace('\n', ' ');
+    }
+
+    private static class Product {
+        private final String version;
+        private final String name;
+        private final String productVersion;
+        private final String state;
+
+        private Product(String version, String name, String productVersion, String state) {
+            this.version = version;
+            this.name = name;
+            this.productVersion = productVersion;
+            this.state = state;
+        }
+    }
+}
@@ -18,27 +18,42 @@
 package org.jboss.pnc.bacon.pig.impl.nvr;
 
 import com.redhat.red.build.finder.BuildConfig;
-import com.redhat.red.build.finder.BuildFinder;
 import com.redhat.red.build.finder.DistributionAnalyzer;
 import com.redhat.red.build.finder.KojiBuild;
-import com.redhat.red.build.finder.KojiClientSession;
 import com.redhat.red.build.finder.report.NVRReport;
 import com.redhat.red.build.finder.report.Report;
 import com.redhat.red.build.koji.KojiClientException;
+import com.redhat.red.build.koji.model.xmlrpc.KojiBuildInfo;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.jboss.pnc.bacon.pig.impl.documents.sharedcontent.BrewSearcher;
+import org.jboss.pnc.bacon.pig.impl.documents.sharedcontent.KojiBuildCache;
+import org.jboss.pnc.bacon.pig.impl.pnc.ArtifactWrapper;
+import org.jboss.pnc.bacon.pig.impl.pnc.PncBuild;
+import org.jboss.pnc.bacon.pig.impl.repo.RepositoryData;
+import org.jboss.pnc.bacon.pig.impl.repo.RepositoryIndex;
+import org.jboss.pnc.bacon.pig.impl.utils.ChecksumUtils.Algorithm;
+import org.jboss.pnc.bacon.pnc.client.PncClientHelper;
+import org.jboss.pnc.client.BuildClient;
+import org.jboss.pnc.client.ClientException;
+import org.jboss.pnc.dto.BuildPushResult;
+import org.jboss.pnc.enums.BuildPushStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * @author Michal Szynkiewicz, michal.l.szynkiewicz@gmail.com <br>
@@ -61,22 +76,13 @@ public class NvrListGenerator {
             return false;
         }
 
-        KojiClientSession session;
-
-        try {
-            session = new KojiClientSession(config.getKojiHubURL());
-        } catch (KojiClientException e) {
-            log.error("Failed to create Koji session: {}", e.getMessage());
-            return false;
-        }
-
         Map<Integer, KojiBuild> builds;
 
         try {
-            BuildFinder bf = new BuildFinder(session, config);
-            builds = bf.findBuilds(checksumTable);
-        } finally {
-            session.close();
+            builds = KojiBuildCache.getInstance().findBuilds(checksumTable, config, BrewSearcher::getSession).getBuilds();
+        } catch (IllegalStateException e) {
+            log.error("Failed to find builds: {}", e.getMessage());
+            return false;
         }
 
         List<KojiBuild> buildList = new ArrayList<>(builds.values());
@@ -100,6 +106,107 @@ public class NvrListGenerator {
         return destFile.exists();
     }
 
+    /**
+     * Generate the NVR list of a generated repository from the checksums that are already known.
+     * <p>
+     * Artifacts built by PNC builds that were pushed to Brew, matched by checksum, are listed with the NVR of the Brew build
+     * created by the push. Only the remaining artifacts, including the ones of builds whose push can't be found, are looked up
+     * in Koji, using the checksums of the repository index and of the checksum files of the repository. Unlike
+     * {@link #generateNvrList(String, String)}, the content of archives in the repository is not analyzed.
+     *
+     * @param repo the generated repository
+     * @param builds PNC builds of the product
+     * @param targetPath path of the NVR list to generate
+     * @return true if the NVR list was generated
+     */
+    public static boolean generateNvrList(RepositoryData repo, Collection<PncBuild> builds, String targetPath) {
+        log.info("Generating NVR list for {} and saving result to {}", repo.getRepositoryPath(), targetPath);
+
+        BuildConfig config = BrewSearcher.getKojiBuildFinderConfig();
+        Algorithm algorithm = Algorithm.fromName(config.getChecksumType().name());
+
+        Map<String, String> nvrsByChecksum = new HashMap<>();
+        BuildClient buildClient = new BuildClient(PncClientHelper.getPncConfiguration());
+        for (PncBuild build : builds) {
+            String nvr = brewNvr(build, buildClient);
+            if (nvr != null && build.getBuiltArtifacts() != null) {
+                build.getBuiltArtifacts().stream().map(artifact -> checksum(artifact, algorithm)).filter(Objects::nonNull)
+                        .forEach(checksum -> nvrsByChecksum.put(checksum.toLowerCase(), nvr));
+            }
+        }
+
+        RepositoryIndex index = repo.getIndex();
+        Set<String> nvrs = new HashSet<>();
+        Map<String, Collection<String>> checksumTable = new HashMap<>();
+        index.stream().filter(entry -> !entry.isChecksumFile()).forEach(entry -> {
+            String checksum = index.checksum(entry, algorithm).toLowerCase();
+            String nvr = nvrsByChecksum.get(checksum);
+            if (nvr != null) {
+                nvrs.add(nvr);
+            } else {
+                checksumTable.computeIfAbsent(checksum, c -> new ArrayList<>()).add(entry.getPath());
+            }
+        });
+        log.info("{} NVRs of PNC builds found, looking up {} other checksums in Koji", nvrs.size(), checksumTable.size());
+
+        if (!checksumTable.isEmpty()) {
+            try {
+                KojiBuildCache.getInstance().findBuilds(checksumTable, config, BrewSearcher::getSession).getBuilds().values()
+                        .stream()
+                        // build 0 holds the files that were not found
+                        .filter(build -> build.getBuildInfo().getId() > 0)
+                        .forEach(build -> nvrs.add(build.getBuildInfo().getNvr()));
+            } catch (IllegalStateException e) {
+                log.error("Failed to find builds: {}", e.getMessage());
+                return false;
+            }
+        }
+
+        // the same format as the NVR report of the Koji Build Finder
+        List<String> nvrList = new ArrayList<>(nvrs);
+        nvrList.sort(String::compareToIgnoreCase);
+        File destFile = new File(targetPath);
+        try {
+            FileUtils.writeStringToFile(destFile, String.join("\n", nvrList), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            log.error("Failed to write {}: {}", destFile, e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return NVR of the Brew build the PNC build was pushed as, <code>null</code> if the push or the Brew build can't be found
+     */
+    private static String brewNvr(PncBuild build, BuildClient buildClient) {
+        try {
+            BuildPushResult pushResult = buildClient.getPushResult(build.getId());
+            if (pushResult == null || pushResult.getStatus() != BuildPushStatus.SUCCESS
+                    || pushResult.getBrewBuildId() == null) {
+                return null;
+            }
+            KojiBuildInfo buildInfo = BrewSearcher.getSession().getBuild(pushResult.getBrewBuildId());
+            return buildInfo == null ? null : buildInfo.getNvr();
+        } catch (ClientException | KojiClientException e) {
+            log.warn("Unable to find the Brew build of PNC build {}, its artifacts will be looked up in Koji: {}",
+                    build.getId(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static String checksum(ArtifactWrapper artifact, Algorithm algorithm) {
+        switch (algorithm) {
+            case MD5:
+                return artifact.getMd5();
+            case SHA1:
+                return artifact.getSha1();
+            case SHA256:
+                return artifact.getSha256();
+            default:
+                return null;
+        }
+    }
+
     private NvrListGenerator() {
     }
 }
@@ -18,8 +18,11 @@
 
 package org.jboss.pnc.bacon.pig.impl.pnc;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Getter;
-import org.jboss.pnc.bacon.pig.impl.utils.FileDownloadUtils;
+import org.jboss.pnc.bacon.pig.impl.utils.ArtifactCache;
+import org.jboss.pnc.bacon.pig.impl.utils.ArtifactCache.Checksum;
+import org.jboss.pnc.bacon.pig.impl.utils.BatchDownloader;
 import org.jboss.pnc.bacon.pig.impl.utils.GAV;
 import org.jboss.pnc.dto.Artifact;
 import org.slf4j.Logger;
@@ -40,11 +43,17 @@ public class ArtifactWrapper {
     private final String gapv;
     private final String fileName;
     private final String downloadUrl;
+    private final String md5;
+    private final String sha1;
+    private final String sha256;
 
     public ArtifactWrapper(Artifact artifact) {
         fileName = artifact.getFilename();
         downloadUrl = artifact.getPublicUrl();
         gapv = artifact.getIdentifier();
+        md5 = artifact.getMd5();
+        sha1 = artifact.getSha1();
+        sha256 = artifact.getSha256();
     }
 
     public GAV toGAV() {
@@ -56,8 +65,20 @@ public class ArtifactWrapper {
         return gapv;
     }
 
+    /**
+     * @return the strongest checksum PNC knows for the artifact, <code>null</code> if it knows none
+     */
+    @JsonIgnore
+    public Checksum getChecksum() {
+        return Checksum.strongest(sha256, sha1, md5);
+    }
+
     public void downloadTo(File downloadedZip) {
-        FileDownloadUtils.downloadTo(URI.create(downloadUrl), downloadedZip);
+        ArtifactCache.getInstance().downloadTo(URI.create(downloadUrl), getChecksum(), downloadedZip);
+    }
+
+    public void downloadTo(File targetPath, BatchDownloader downloader) {
+        downloader.submit(URI.create(downloadUrl), targetPath, () -> downloadTo(targetPath));
     }
 
     public void downloadToDirectory(Path parentDirPath) {
@@ -65,4 +86,10 @@ public class ArtifactWrapper {
 
         downloadTo(targetPath);
     }
+
+    public void downloadToDirectory(Path parentDirPath, BatchDownloader downloader) {
+        File targetPath = parentDirPath.resolve(fileName).toFile();
+
+        downloadTo(targetPath, downloader);
+    }
 }
@@ -28,13 +28,8 @@ import org.jboss.pnc.dto.Build;
 import org.jboss.pnc.enums.BuildStatus;
 import org.jboss.pnc.rest.api.parameters.BuildsFilterParameters;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Optional;
 
 import static java.util.Optional.of;
 import static org.jboss.pnc.bacon.pig.impl.utils.PncClientUtils.query;
@@ -59,7 +54,14 @@ public class BuildInfoCollector {
         bd.setDependencyArtifacts(artifacts);
     }
 
-    public PncBuild getLatestBuild(String configId) {
+    /**
+     * Get the latest successful build of the build config, without its log and artifacts
+     *
+     * @param configId id of the build config
+     * @return the build
+     * @throws NoSuccessfulBuildException if the build config has no successful build
+     */
+    public Build getLatestBuildInfo(String configId) {
         try {
             BuildsFilterParameters filter = new BuildsFilterParameters();
             filter.setLatest(true);
@@ -69,33 +71,24 @@ public class BuildInfoCollector {
             if (!buildIterator.hasNext()) {
                 throw new NoSuccessfulBuildException(configId);
             }
+            return buildIterator.next();
+        } catch (ClientException e) {
+            throw new RuntimeException("Failed to get latest successful build for " + configId, e);
+        }
+    }
 
-            Build build = buildIterator.next();
+    public PncBuild getLatestBuild(String configId) {
+        try {
+            Build build = getLatestBuildInfo(configId);
 
             PncBuild result = new PncBuild(build);
-
-            Optional<InputStream> maybeBuildLogs = buildClient.getBuildLogs(build.getId());
-            if (maybeBuildLogs.isPresent()) {
-                InputStream inputStream = maybeBuildLogs.get();
-                String log = readLog(inputStream);
-                result.setBuildLog(log);
-            }
             result.setBuiltArtifacts(toList(buildClient.getBuiltArtifacts(build.getId())));
             return result;
-        } catch (ClientException | IOException e) {
+        } catch (ClientException e) {
             throw new RuntimeException("Failed to get latest successful build for " + configId, e);
         }
     }
 
-    private String readLog(InputStream inputStream) throws IOException {
-        StringBuilder logBuilder = new StringBuilder();
-        try (InputStreamReader inputStreamReader = new InputStreamReader(inputStream);
-                BufferedReader reader = new BufferedReader(inputStreamReader);) {
-            reader.lines().forEach(l -> logBuilder.append(l));
-            return reader.toString();
-        }
-    }
-
     public BuildInfoCollector() {
         buildClient = new BuildClient(PncClientHelper.getPncConfiguration());
         buildConfigClient = new BuildConfigurationClient(PncClientHelper.getPncConfiguration());
@@ -0,0 +1,132 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.bacon.pig.impl.pnc;
+
+import org.jboss.pnc.bacon.pig.impl.utils.FileUtils;
+import org.jboss.pnc.bacon.pnc.client.PncClientHelper;
+import org.jboss.pnc.client.BuildClient;
+import org.jboss.pnc.client.ClientException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Optional;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+
+/**
+ * Log of a PNC build.
+ * <p>
+ * The log is only downloaded when it's read for the first time. It's stored gzipped on disk and read line by line, so that logs
+ * of big builds don't have to fit in memory.
+ */
+public class BuildLog {
+    private static final Logger log = LoggerFactory.getLogger(BuildLog.class);
+
+    private static File logDir;
+
+    private final String buildId;
+    private File logFile;
+    private boolean available;
+
+    public BuildLog(String buildId) {
+        this.buildId = buildId;
+    }
+
+    public String getBuildId() {
+        return buildId;
+    }
+
+    /**
+     * Read the lines of the log, downloading it if needed. The returned stream has to be closed.
+     *
+     * @return lines of the log, empty if PNC has no log for the build
+     */
+    public Stream<String> lines() {
+        if (!download()) {
+            return Stream.empty();
+        }
+        try {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new GZIPInputStream(new FileInputStream(logFile)), StandardCharsets.UTF_8));
+            return reader.lines().onClose(() -> {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read log of build " + buildId + " from " + logFile, e);
+        }
+    }
+
+    /**
+     * @return true if the log is available
+     */
+    private synchronized boolean download() {
+        if (logFile != null) {
+            return available;
+        }
+        File file = new File(getLogDir(), buildId + ".log.gz");
+        File partFile = new File(getLogDir(), buildId + ".log.gz.part");
+        try {
+            Optional<InputStream> maybeLog = new BuildClient(PncClientHelper.getPncConfiguration()).getBuildLogs(buildId);
+            if (maybeLog.isPresent()) {
+                log.debug("Downloading log of build {} to {}", buildId, file);
+                try (InputStream input = maybeLog.get();
+                        OutputStream output = new GZIPOutputStream(new FileOutputStream(partFile))) {
+                    byte[] buffer = new byte[64 * 1024];
+                    int read;
+                    while ((read = input.read(buffer)) != -1) {
+                        output.write(buffer, 0, read);
+                    }
+                }
+                Files.move(partFile.toPath(), file.toPath(), ATOMIC_MOVE);
+                available = true;
+            } else {
+                log.info("No log found for build {}", buildId);
+            }
+            logFile = file;
+            return available;
+        } catch (ClientException | IOException e) {
+            partFile.delete();
+            throw new RuntimeException("Failed to download log of build " + buildId, e);
+        }
+    }
+
+    private static synchronized File getLogDir() {
+        if (logDir == null) {
+            logDir = FileUtils.mkTempDir("build-logs");
+        }
+        return logDir;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.bacon.pig.impl.pnc;
+
+import org.jboss.pnc.bacon.pig.impl.sources.SourcesGenerator;
+import org.jboss.pnc.bacon.pig.impl.utils.ArtifactCache;
+import org.jboss.pnc.bacon.pig.impl.utils.ArtifactCache.Checksum;
+import org.jboss.pnc.bacon.pig.impl.utils.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Collects the builds of a group build as soon as they finish, while the rest of the group is still building.
+ * <p>
+ * For every finished build, its {@link PncBuild} with the build log and the built artifacts is collected, the built artifacts
+ * are prefetched to the {@link ArtifactCache} and, optionally, the sources of the build are downloaded, so that the later
+ * stages find them locally. The work is done by <code>pig.prefetch.threads</code> (4 by default) threads.
+ */
+public class BuildPrefetcher implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(BuildPrefetcher.class);
+
+    private static final int THREADS = Integer.getInteger("pig.prefetch.threads", 4);
+
+    private final boolean prefetchSources;
+    private final BuildInfoCollector buildInfoCollector = new BuildInfoCollector();
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "build-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * builds, by build config id
+     */
+    private final Map<String, CompletableFuture<PncBuild>> builds = new ConcurrentHashMap<>();
+    /**
+     * downloaded sources, by {@link SourcesGenerator#sourcesKey(PncBuild)}
+     */
+    private final Map<String, CompletableFuture<File>> sources = new ConcurrentHashMap<>();
+    private File sourcesDir;
+
+    /**
+     * @param prefetchSources whether to download the sources of the builds
+     */
+    public BuildPrefetcher(boolean prefetchSources) {
+        this.prefetchSources = prefetchSources;
+    }
+
+    /**
+     * Start collecting the latest successful build of the build config, if it's not being collected already
+     *
+     * @param buildConfigId id of the build config
+     */
+    public void buildFinished(String buildConfigId) {
+        builds.computeIfAbsent(buildConfigId, id -> CompletableFuture.supplyAsync(() -> collect(id), executor));
+    }
+
+    /**
+     * Get the latest successful build of the build config, waiting for it to be collected if needed
+     *
+     * @param buildConfigId id of the build config
+     * @return the build
+     */
+    public PncBuild getBuild(String buildConfigId) {
+        buildFinished(buildConfigId);
+        try {
+            return builds.get(buildConfigId).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                    : new RuntimeException("Failed to get the build of build config " + buildConfigId, e.getCause());
+        }
+    }
+
+    /**
+     * Take the prefetched sources of the build, waiting for their download to finish if needed. The caller becomes the owner of
+     * the returned file.
+     *
+     * @param build the build
+     * @return the sources archive or <code>null</code> if the sources were not prefetched
+     */
+    public File takeSources(PncBuild build) {
+        CompletableFuture<File> download = sources.remove(SourcesGenerator.sourcesKey(build));
+        if (download == null) {
+            return null;
+        }
+        try {
+            return download.join();
+        } catch (CompletionException e) {
+            log.warn("Failed to prefetch sources of {}, downloading them again: {}", build.getName(),
+                    e.getCause().getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private PncBuild collect(String buildConfigId) {
+        PncBuild build = buildInfoCollector.getLatestBuild(buildConfigId);
+        log.info("Collected build {} of {}", build.getId(), build.getName());
+
+        build.getBuiltArtifacts()
+                .forEach(artifact -> ArtifactCache.getInstance().prefetch(URI.create(artifact.getDownloadUrl()),
+                        Checksum.strongest(artifact.getSha256(), artifact.getSha1(), artifact.getMd5()), executor));
+
+        if (prefetchSources) {
+            File targetDir = getSourcesDir();
+            sources.computeIfAbsent(SourcesGenerator.sourcesKey(build),
+                    key -> CompletableFuture.supplyAsync(
+                            () -> SourcesGenerator.downloadSources(build, new File(targetDir, build.getId() + ".tar.gz")),
+                            executor));
+        }
+        return build;
+    }
+
+    private synchronized File getSourcesDir() {
+        if (sourcesDir == null) {
+            sourcesDir = FileUtils.mkTempDir("prefetched-sources");
+        }
+        return sourcesDir;
+    }
+}
@@ -19,25 +19,40 @@ package org.jboss.pnc.bacon.pig.impl.pnc;
 
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.StoredConfig;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.TagOpt;
 import org.eclipse.jgit.transport.URIish;
-import org.jboss.pnc.bacon.pig.impl.utils.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.net.MalformedURLException;
 import java.net.URI;
+import java.nio.channels.FileLock;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.lang.System.getProperty;
 
 /**
+ * Checks if a branch has been modified since the latest build of a build config.
+ * <p>
+ * Refs of a repository are first listed remotely, which is enough if the branch still points to the built commit. Only if it
+ * doesn't, the built tag is fetched, alone, to a bare mirror of the repository. The mirrors are kept in
+ * <code>pig.git.cache.dir</code> (<code>~/.cache/pig/git</code> by default), so the history is only downloaded once and then
+ * updated incrementally. The checks are thread safe, checks of the same repository are serialized.
+ *
  * TODO: drop it once https://projects.engineering.redhat.com/browse/NCL-1322 is implemented
  *
  * @author Michal Szynkiewicz, michal.l.szynkiewicz@gmail.com <br>
@@ -47,82 +62,137 @@ public class GitRepoInspector {
 
     private static final Logger log = LoggerFactory.getLogger(GitRepoInspector.class);
 
+    private static final File CACHE_DIR = new File(
+            getProperty("pig.git.cache.dir", getProperty("user.home") + "/.cache/pig/git"));
+    private static final String REMOTE = "origin";
+
     private static final BuildInfoCollector buildInfoCollector = new BuildInfoCollector();
 
+    /**
+     * remote refs by name, by repository url, listed once per run
+     */
+    private static final Map<String, Map<String, Ref>> remoteRefs = new ConcurrentHashMap<>();
+    private static final Map<String, Object> locks = new ConcurrentHashMap<>();
+
     public static boolean isModifiedBranch(String configId, String internalUrl, String refSpec) {
 
         log.info("Trying to check if branch '" + refSpec + "' in '" + internalUrl
                 + "' has been modified, compared to latest build of build config '" + configId + "'");
-        File tempDir = FileUtils.mkTempDir("git");
-        try (Git git = cloneRepo(internalUrl, tempDir)) {
-            String latestCommit = headRevision(git, refSpec);
-
+        try {
             String tagName = getLatestBuiltRevision(configId);
-            Set<String> baseCommitPosibilities = getBaseCommitPossibilities(git, tagName);
-
-            return !baseCommitPosibilities.contains(latestCommit);
+            synchronized (locks.computeIfAbsent(internalUrl, url -> new Object())) {
+                File mirrorDir = mirrorDir(internalUrl);
+                mirrorDir.getParentFile().mkdirs();
+                // other PiG runs may use the mirror at the same time
+                try (RandomAccessFile lockFile = new RandomAccessFile(new File(mirrorDir.getPath() + ".lock"), "rw");
+                        FileLock ignored = lockFile.getChannel().lock();
+                        Git git = openMirror(internalUrl, mirrorDir)) {
+                    Map<String, Ref> refs = remoteRefs.computeIfAbsent(internalUrl, url -> listRemoteRefs(git));
+
+                    ObjectId latestCommit = resolve(git, refs, refSpec);
+                    ObjectId tagCommit = resolve(git, refs, tagName);
+                    if (latestCommit != null && latestCommit.equals(tagCommit)) {
+                        return false;
+                    }
+                    Set<String> baseCommitPosibilities = getBaseCommitPossibilities(git, tagName, tagCommit);
+
+                    return latestCommit != null && !baseCommitPosibilities.contains(latestCommit.getName());
+                }
+            }
         } catch (NoSuccessfulBuildException e) {
             log.info(e.getMessage());
         } catch (Exception e) {
             log.warn("Failed trying to check if branch is modified", e);
-        } finally {
-            try {
-                org.apache.commons.io.FileUtils.deleteDirectory(tempDir);
-            } catch (IOException e) {
-                // not important enough to log
-            }
         }
         return false;
     }
 
-    private static Git cloneRepo(String internalUrl, File targetDir) throws GitAPIException, IOException {
-        Git git = Git.init().setDirectory(targetDir).call();
+    private static File mirrorDir(String internalUrl) {
+        String name = internalUrl.replaceAll("^[a-z+]+://", "").replaceAll("[^a-zA-Z0-9._-]+", "_");
+        return new File(CACHE_DIR, name + "-" + Integer.toHexString(internalUrl.hashCode()) + ".git");
+    }
+
+    private static Git openMirror(String internalUrl, File mirrorDir) throws GitAPIException, IOException {
+        if (new File(mirrorDir, "config").exists()) {
+            return Git.open(mirrorDir);
+        }
+        Git git = Git.init().setBare(true).setDirectory(mirrorDir).call();
         StoredConfig config = git.getRepository().getConfig();
         config.setBoolean("http", null, "sslVerify", false);
         config.save();
 
-        git.remoteAdd().setName("prod").setUri(toAnonymous(internalUrl)).call();
-
-        git.fetch().setRemote("prod").setTagOpt(TagOpt.FETCH_TAGS).call();
+        git.remoteAdd().setName(REMOTE).setUri(toAnonymous(internalUrl)).call();
         return git;
     }
 
-    private static String headRevision(Git git, String branch) throws GitAPIException, IOException {
-        Ref ref = git.getRepository().findRef("prod/" + branch);
-        if (ref == null) {
-            ref = git.getRepository().findRef(branch);
+    private static Map<String, Ref> listRemoteRefs(Git git) {
+        try {
+            return git.lsRemote().setRemote(REMOTE).setHeads(true).setTags(true).callAsMap();
+        } catch (GitAPIException e) {
+            throw new RuntimeException("Failed to list refs of " + git.getRepository().getDirectory(), e);
         }
-        ObjectId id = ref.getPeeledObjectId();
+    }
+
+    /**
+     * Find the commit a branch, a tag or a commit id points to, using the remote refs if possible. Otherwise, the branches are
+     * fetched to the mirror.
+     *
+     * @return the commit or <code>null</code> if it can't be found
+     */
+    private static ObjectId resolve(Git git, Map<String, Ref> refs, String revision) throws GitAPIException, IOException {
+        for (String name : new String[] { Constants.R_HEADS + revision, Constants.R_TAGS + revision, revision }) {
+            Ref ref = refs.get(name);
+            if (ref != null) {
+                return ref.getPeeledObjectId() != null ? ref.getPeeledObjectId() : ref.getObjectId();
+            }
+        }
+        if (ObjectId.isId(revision)) {
+            return ObjectId.fromString(revision);
+        }
+        // e.g. an abbreviated commit id
+        Repository repository = git.getRepository();
+        ObjectId id = repository.resolve(revision + "^{commit}");
         if (id == null) {
-            id = ref.getObjectId();
+            log.debug("Fetching branches of {} to find {}", repository.getDirectory(), revision);
+            fetch(git, new RefSpec("+refs/heads/*:refs/heads/*"));
+            id = repository.resolve(revision + "^{commit}");
         }
-        Iterable<RevCommit> commits = git.log().add(id).call();
-        return commits.iterator().next().getName();
+        return id;
     }
 
     /**
      * TODO: smarter check is required, here if a repour tag is on an "upstream" commit TODO: we may miss modifications (because
      * we return here the tag commit and its parent)
      */
-    private static Set<String> getBaseCommitPossibilities(Git git, String tagName) throws GitAPIException, IOException {
+    private static Set<String> getBaseCommitPossibilities(Git git, String tagName, ObjectId tagCommit)
+            throws GitAPIException, IOException {
         Set<String> result = new HashSet<>();
+        if (tagCommit == null) {
+            throw new RuntimeException("Unable to find tag " + tagName);
+        }
 
-        Ref ref = git.getRepository().findRef(tagName);
-
-        ObjectId id = ref.getPeeledObjectId() != null ? ref.getPeeledObjectId() : ref.getObjectId();
-
-        Iterator<RevCommit> log = git.log().add(id).call().iterator();
+        Repository repository = git.getRepository();
+        if (!repository.getObjectDatabase().has(tagCommit)) {
+            log.debug("Fetching tag {} to {}", tagName, repository.getDirectory());
+            fetch(git, new RefSpec("+" + Constants.R_TAGS + tagName + ":" + Constants.R_TAGS + tagName));
+        }
 
-        result.add(log.next().getName());
-        if (log.hasNext()) {
-            result.add(log.next().getName());
+        try (RevWalk walk = new RevWalk(repository)) {
+            RevCommit commit = walk.parseCommit(tagCommit);
+            result.add(commit.getName());
+            if (commit.getParentCount() > 0) {
+                result.add(commit.getParent(0).getName());
+            }
         }
         return result;
     }
 
+    private static void fetch(Git git, RefSpec refSpec) throws GitAPIException {
+        git.fetch().setRemote(REMOTE).setRefSpecs(refSpec).setTagOpt(TagOpt.NO_TAGS).call();
+    }
+
     private static String getLatestBuiltRevision(String configId) {
-        PncBuild latestBuild = buildInfoCollector.getLatestBuild(configId);
-        return latestBuild.getBuildConfigRevision().getScmRevision();
+        return buildInfoCollector.getLatestBuildInfo(configId).getBuildConfigRevision().getScmRevision();
     }
 
     private static URIish toAnonymous(String internalUrl) throws MalformedURLException {
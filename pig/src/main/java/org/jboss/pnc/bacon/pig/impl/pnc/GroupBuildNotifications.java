@@ -0,0 +1,155 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.bacon.pig.impl.pnc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jboss.pnc.bacon.pig.impl.utils.WebSocketConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * PNC notifications about a group build and the builds it consists of, received over a WebSocket.
+ * <p>
+ * A notification is considered a change if the group build changes or if one of its builds finishes. Notifications are only
+ * used to know when to check the group build, its status is always read from the REST API.
+ */
+class GroupBuildNotifications implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(GroupBuildNotifications.class);
+
+    private static final int CONNECT_TIMEOUT = 30_000;
+
+    private static final Set<String> FAILED_STATUSES = new HashSet<>(
+            Arrays.asList("FAILED", "REJECTED_FAILED_DEPENDENCIES", "CANCELLED", "SYSTEM_ERROR"));
+    private static final Set<String> FINISHED_STATUSES = new HashSet<>(
+            Arrays.asList("SUCCESS", "NO_REBUILD_REQUIRED", "REJECTED"));
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final String groupBuildId;
+    private WebSocketConnection connection;
+
+    private long changes;
+    private long seenChanges;
+    private boolean closed;
+    private String failure;
+
+    private GroupBuildNotifications(String groupBuildId) {
+        this.groupBuildId = groupBuildId;
+    }
+
+    /**
+     * Subscribe to the notifications about the group build
+     *
+     * @param notificationsUri uri of the PNC notification WebSocket
+     * @param groupBuildId id of the group build
+     * @return the subscription or <code>null</code> if the notifications are not available
+     */
+    static GroupBuildNotifications subscribe(URI notificationsUri, String groupBuildId) {
+        GroupBuildNotifications notifications = new GroupBuildNotifications(groupBuildId);
+        try {
+            notifications.connection = WebSocketConnection.open(notificationsUri, CONNECT_TIMEOUT, notifications::onMessage,
+                    notifications::onClose);
+            log.debug("Subscribed to PNC notifications at {}", notificationsUri);
+            return notifications;
+        } catch (IOException | RuntimeException e) {
+            log.info("PNC notifications at {} are not available: {}", notificationsUri, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Wait until a change of the group build is notified, the subscription is closed or the timeout elapses
+     *
+     * @param timeout [milliseconds] maximum time to wait
+     * @return true if a change was notified since the previous call
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    synchronized boolean awaitChange(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        long remaining = timeout;
+        while (changes == seenChanges && !closed && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        boolean changed = changes != seenChanges;
+        seenChanges = changes;
+        return changed;
+    }
+
+    synchronized boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * @return description of a failed build of the group build, <code>null</code> if no build failure was notified
+     */
+    synchronized String getFailure() {
+        return failure;
+    }
+
+    @Override
+    public void close() {
+        connection.close();
+    }
+
+    private void onMessage(String message) {
+        JsonNode notification;
+        try {
+            notification = mapper.readTree(message);
+        } catch (IOException e) {
+            log.debug("Ignoring unparseable PNC notification: {}", message);
+            return;
+        }
+        if (groupBuildId.equals(notification.path("groupBuild").path("id").asText(null))) {
+            log.debug("Group build {} changed, progress: {}", groupBuildId, notification.path("progress").asText());
+            changed(null);
+            return;
+        }
+        JsonNode build = notification.path("build");
+        if (groupBuildId.equals(build.path("groupBuild").path("id").asText(null))) {
+            String status = build.path("status").asText();
+            if (FAILED_STATUSES.contains(status)) {
+                changed("build " + build.path("id").asText() + " finished with status " + status);
+            } else if (FINISHED_STATUSES.contains(status)) {
+                log.debug("Build {} of group build {} finished with status {}", build.path("id").asText(), groupBuildId,
+                        status);
+                changed(null);
+            }
+        }
+    }
+
+    private synchronized void changed(String buildFailure) {
+        if (failure == null) {
+            failure = buildFailure;
+        }
+        changes++;
+        notifyAll();
+    }
+
+    private synchronized void onClose() {
+        closed = true;
+        notifyAll();
+    }
+}
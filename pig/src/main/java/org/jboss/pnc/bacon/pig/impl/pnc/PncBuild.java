@@ -18,6 +18,7 @@
 
 package org.jboss.pnc.bacon.pig.impl.pnc;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.ToString;
@@ -28,13 +29,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.util.Collections;
 import java.util.List;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
-import static java.util.Arrays.asList;
-
 /**
  * @author Michal Szynkiewicz, michal.l.szynkiewicz@gmail.com <br>
  *         Date: 6/3/17
@@ -50,7 +48,7 @@ public class PncBuild {
     @Delegate
     private final Build build;
 
-    private List<String> buildLog;
+    private BuildLog buildLog;
     private List<ArtifactWrapper> builtArtifacts;
     private List<ArtifactWrapper> dependencyArtifacts;
 
@@ -62,8 +60,15 @@ public class PncBuild {
         builtArtifacts = artifacts.stream().map(ArtifactWrapper::new).collect(Collectors.toList());
     }
 
-    public void setBuildLog(String log) {
-        buildLog = log == null ? Collections.emptyList() : asList(log.split("\\r?\\n"));
+    /**
+     * @return log of the build, downloaded when it's read
+     */
+    @JsonIgnore
+    public synchronized BuildLog getBuildLog() {
+        if (buildLog == null) {
+            buildLog = new BuildLog(build.getId());
+        }
+        return buildLog;
     }
 
     public void setDependencyArtifacts(List<Artifact> artifacts) {
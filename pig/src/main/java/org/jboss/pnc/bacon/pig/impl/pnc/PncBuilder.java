@@ -19,35 +19,80 @@ package org.jboss.pnc.bacon.pig.impl.pnc;
 
 import org.jboss.pnc.bacon.pig.impl.utils.SleepUtils;
 import org.jboss.pnc.client.ClientException;
+import org.jboss.pnc.client.Configuration;
 import org.jboss.pnc.client.GroupBuildClient;
 import org.jboss.pnc.client.GroupConfigurationClient;
+import org.jboss.pnc.dto.Build;
 import org.jboss.pnc.dto.GroupBuild;
 import org.jboss.pnc.dto.GroupConfigurationRef;
 import org.jboss.pnc.dto.requests.GroupBuildRequest;
+import org.jboss.pnc.enums.BuildStatus;
 import org.jboss.pnc.enums.RebuildMode;
+import org.jboss.pnc.rest.api.parameters.BuildsFilterParameters;
 import org.jboss.pnc.rest.api.parameters.GroupBuildParameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
 import static org.jboss.pnc.bacon.pnc.client.PncClientHelper.getPncConfiguration;
 
 /**
+ * Triggers group builds in PNC and waits for them to finish.
+ * <p>
+ * The group build is checked whenever PNC notifies that it changed or that one of its builds finished. The notifications are
+ * received from <code>pig.pnc.notificationsUrl</code>, by default the <code>/pnc-rest/v2/notifications</code> WebSocket of the
+ * configured PNC, and an empty value disables them. Without notifications, the group build is polled with the interval growing
+ * from 2 seconds up to <code>pig.pnc.maxPollIntervalSeconds</code>, 30 by default.
+ * <p>
+ * Builds of the group that already finished can be reported while the rest of the group is still building, see
+ * {@link #buildAndWait(GroupConfigurationRef, boolean, boolean, RebuildMode, Consumer)}.
+ *
  * @author Michal Szynkiewicz, michal.l.szynkiewicz@gmail.com <br>
  *         Date: 11/14/17
  */
 public class PncBuilder {
     private static final Logger log = LoggerFactory.getLogger(PncBuilder.class);
+
+    static final int MIN_POLL_INTERVAL = 2;
+    static final int MAX_POLL_INTERVAL = Integer.getInteger("pig.pnc.maxPollIntervalSeconds", 30);
+    /**
+     * notifications may be missed, the group build is checked at least this often anyway
+     */
+    private static final long NOTIFICATION_CHECK_INTERVAL = TimeUnit.MINUTES.toMillis(5);
+    static final long RESUBSCRIBE_INTERVAL = TimeUnit.MINUTES.toMillis(5);
+
     private final GroupBuildClient groupBuildClient;
     private final GroupConfigurationClient groupConfigClient;
 
     public PncBuilder() {
-        groupBuildClient = new GroupBuildClient(getPncConfiguration());
-        groupConfigClient = new GroupConfigurationClient(getPncConfiguration());
+        this(new GroupBuildClient(getPncConfiguration()), new GroupConfigurationClient(getPncConfiguration()));
+    }
+
+    PncBuilder(GroupBuildClient groupBuildClient, GroupConfigurationClient groupConfigClient) {
+        this.groupBuildClient = groupBuildClient;
+        this.groupConfigClient = groupConfigClient;
     }
 
     public void buildAndWait(GroupConfigurationRef group, boolean tempBuild, boolean tempBuildTS, RebuildMode rebuildMode) {
+        buildAndWait(group, tempBuild, tempBuildTS, rebuildMode, null);
+    }
+
+    /**
+     * Build the group and wait for the group build to finish successfully
+     *
+     * @param buildFinished if not <code>null</code>, called with the id of the build config of every build of the group that
+     *        finishes successfully, as soon as it is noticed, i.e. possibly long before the whole group finishes
+     */
+    public void buildAndWait(GroupConfigurationRef group, boolean tempBuild, boolean tempBuildTS, RebuildMode rebuildMode,
+            Consumer<String> buildFinished) {
         GroupBuild groupBuild = run(group, tempBuild, tempBuildTS, rebuildMode);
-        waitForSuccessfulFinish(groupBuild.getId());
+        waitForSuccessfulFinish(groupBuild.getId(), notificationsUri(), buildFinished);
     }
 
     private GroupBuild run(GroupConfigurationRef group, boolean tempBuild, boolean tempBuildTS, RebuildMode rebuildMode) {
@@ -65,13 +110,107 @@ public class PncBuilder {
         }
     }
 
-    private void waitForSuccessfulFinish(String groupBuildId) {
+    /**
+     * @param notificationsUri uri of the PNC notification WebSocket, <code>null</code> to only poll the group build
+     */
+    void waitForSuccessfulFinish(String groupBuildId, URI notificationsUri, Consumer<String> buildFinished) {
         log.info("waiting for finish of group build {}", groupBuildId);
-        SleepUtils.waitFor(() -> isSuccessfullyFinished(groupBuildId), 30);
+        // subscribing before the first check, so that no change between the check and the subscription is missed
+        GroupBuildNotifications notifications = subscribe(notificationsUri, groupBuildId);
+        long nextSubscription = currentTimeMillis() + RESUBSCRIBE_INTERVAL;
+        int pollInterval = MIN_POLL_INTERVAL;
+        Set<String> finishedBuilds = new HashSet<>();
+        try {
+            while (!isSuccessfullyFinished(groupBuildId)) {
+                reportFinishedBuilds(groupBuildId, buildFinished, finishedBuilds);
+                if (notifications != null && notifications.getFailure() != null) {
+                    throw new RuntimeException("Build group " + groupBuildId + " failed, " + notifications.getFailure());
+                }
+                if (notifications != null && notifications.isOpen()) {
+                    notifications.awaitChange(NOTIFICATION_CHECK_INTERVAL);
+                    pollInterval = MIN_POLL_INTERVAL;
+                    continue;
+                }
+                if (notificationsUri != null && currentTimeMillis() >= nextSubscription) {
+                    closeQuietly(notifications);
+                    notifications = subscribe(notificationsUri, groupBuildId);
+                    nextSubscription = currentTimeMillis() + RESUBSCRIBE_INTERVAL;
+                    if (notifications != null) {
+                        continue;
+                    }
+                }
+                sleep(pollInterval);
+                pollInterval = Math.min(pollInterval * 2, MAX_POLL_INTERVAL);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for group build " + groupBuildId, e);
+        } finally {
+            closeQuietly(notifications);
+        }
         log.info("group build finished successfully");
+        reportFinishedBuilds(groupBuildId, buildFinished, finishedBuilds);
+    }
+
+    /**
+     * Pass the build configs of the builds of the group build that finished successfully and were not reported yet to the
+     * listener
+     */
+    private void reportFinishedBuilds(String groupBuildId, Consumer<String> buildFinished, Set<String> reported) {
+        if (buildFinished == null) {
+            return;
+        }
+        try {
+            for (Build build : groupBuildClient.getBuilds(groupBuildId, new BuildsFilterParameters(), Optional.empty(),
+                    Optional.empty())) {
+                String buildConfigId = build.getBuildConfigRevision().getId();
+                boolean successful = build.getStatus() == BuildStatus.SUCCESS
+                        || build.getStatus() == BuildStatus.NO_REBUILD_REQUIRED;
+                if (successful && reported.add(buildConfigId)) {
+                    log.debug("Build {} of build config {} finished", build.getId(), buildConfigId);
+                    buildFinished.accept(buildConfigId);
+                }
+            }
+        } catch (ClientException | RuntimeException e) {
+            log.warn("Failed to get the builds of group build {}, will retry on the next check", groupBuildId, e);
+        }
+    }
+
+    private static GroupBuildNotifications subscribe(URI notificationsUri, String groupBuildId) {
+        return notificationsUri == null ? null : GroupBuildNotifications.subscribe(notificationsUri, groupBuildId);
+    }
+
+    private static void closeQuietly(GroupBuildNotifications notifications) {
+        if (notifications != null) {
+            notifications.close();
+        }
+    }
+
+    /**
+     * @return uri of the PNC notifications WebSocket, <code>null</code> if the notifications are disabled
+     */
+    static URI notificationsUri() {
+        String url = System.getProperty("pig.pnc.notificationsUrl");
+        if (url != null) {
+            return url.trim().isEmpty() ? null : URI.create(url.trim());
+        }
+        Configuration configuration = getPncConfiguration();
+        String scheme = "http".equalsIgnoreCase(configuration.getProtocol()) ? "ws" : "wss";
+        return URI.create(scheme + "://" + configuration.getHost() + "/pnc-rest/v2/notifications");
+    }
+
+    /**
+     * @param seconds how long to wait before the next poll of the group build
+     */
+    void sleep(int seconds) {
+        SleepUtils.sleep(seconds);
+    }
+
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
     }
 
-    private Boolean isSuccessfullyFinished(String groupBuildId) {
+    boolean isSuccessfullyFinished(String groupBuildId) {
         try {
             GroupBuild groupBuild = groupBuildClient.getSpecific(groupBuildId);
             switch (groupBuild.getStatus()) {
@@ -23,7 +23,6 @@ import org.jboss.pnc.bacon.pig.impl.config.Config;
 import org.jboss.pnc.bacon.pig.impl.config.ProductConfig;
 import org.jboss.pnc.bacon.pig.impl.utils.CollectionUtils;
 import org.jboss.pnc.bacon.pig.impl.utils.PncClientUtils;
-import org.jboss.pnc.bacon.pig.impl.utils.SleepUtils;
 import org.jboss.pnc.bacon.pnc.client.PncClientHelper;
 import org.jboss.pnc.client.BuildConfigurationClient;
 import org.jboss.pnc.client.ClientException;
@@ -52,10 +51,21 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static java.util.Optional.empty;
@@ -65,12 +75,24 @@ import static org.jboss.pnc.bacon.pig.impl.utils.PncClientUtils.query;
 import static org.jboss.pnc.bacon.pig.impl.utils.PncClientUtils.toStream;
 
 /**
+ * Imports the product, its version, milestone, build group and build configs from the PiG configuration to PNC.
+ * <p>
+ * The existing build configs are read in bulk, the build configs of the group with a single query and the other ones by names,
+ * in batches. What needs to be created or updated is then decided locally and only the needed changes are sent to PNC, by
+ * <code>pig.pnc.importThreads</code> (8 by default) threads.
+ *
  * @author Michal Szynkiewicz, michal.l.szynkiewicz@gmail.com <br>
  *         Date: 11/28/17
  */
 public class PncEntitiesImporter {
     private static final Logger log = LoggerFactory.getLogger(PncEntitiesImporter.class);
 
+    private static final int THREADS = Integer.getInteger("pig.pnc.importThreads", 8);
+    /**
+     * maximum number of names in a single query, to keep the query url short
+     */
+    private static final int NAMES_PER_QUERY = 50;
+
     private final BuildConfigurationClient buildConfigClient;
     private final GroupConfigurationClient groupConfigClient;
     private final ProductClient productClient;
@@ -87,6 +109,17 @@ public class PncEntitiesImporter {
 
     private PncConfigurator pncConfigurator = new PncConfigurator();
 
+    private final Map<String, BuildConfiguration> buildConfigsById = new ConcurrentHashMap<>();
+    private final Map<String, Project> projectsByName = new ConcurrentHashMap<>();
+    /**
+     * repositories of the build configs, by {@link BuildConfig#getShortScmURIPath()}
+     */
+    private final Map<String, CompletableFuture<SCMRepository>> repositories = new ConcurrentHashMap<>();
+    private Map<String, BuildConfigData> configsByName;
+    private Set<String> groupConstituents;
+    private ExecutorService executor;
+    private RepositoryCreationWaiter repositoryCreationWaiter;
+
     public PncEntitiesImporter() {
         buildConfigClient = new BuildConfigurationClient(PncClientHelper.getPncConfiguration());
         groupConfigClient = new GroupConfigurationClient(PncClientHelper.getPncConfiguration());
@@ -104,9 +137,20 @@ public class PncEntitiesImporter {
         pncConfigurator.markMilestoneCurrent(version, milestone);
         buildGroup = getOrGenerateBuildGroup();
 
-        configs = getAddOrUpdateBuildConfigs();
-        log.debug("Setting up build dependencies");
-        setUpBuildDependencies();
+        executor = Executors.newFixedThreadPool(THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "pnc-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+        repositoryCreationWaiter = new RepositoryCreationWaiter(PncBuilder.notificationsUri());
+        try {
+            configs = getAddOrUpdateBuildConfigs();
+            log.debug("Setting up build dependencies");
+            setUpBuildDependencies();
+        } finally {
+            repositoryCreationWaiter.close();
+            executor.shutdownNow();
+        }
 
         log.debug("Adding builds to group");
         addBuildConfigIdsToGroup();
@@ -114,7 +158,37 @@ public class PncEntitiesImporter {
     }
 
     private void setUpBuildDependencies() {
-        configs.parallelStream().forEach(this::setUpBuildDependencies);
+        runAll(configs, this::setUpBuildDependencies);
+    }
+
+    /**
+     * Run the action for all the items on the executor and wait for all of them to finish
+     */
+    private <T> void runAll(Collection<T> items, Consumer<T> action) {
+        awaitAll(items.stream().map(item -> executor.submit(() -> action.accept(item))).collect(Collectors.toList()));
+    }
+
+    /**
+     * Wait for all the tasks to finish, rethrowing the first failure, if any
+     */
+    private void awaitAll(List<? extends Future<?>> results) {
+        RuntimeException failure = null;
+        for (Future<?> result : results) {
+            try {
+                result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while importing build configurations", e);
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                            : new RuntimeException("Failed to import build configurations", e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
     }
 
     private void setUpBuildDependencies(BuildConfigData config) {
@@ -165,7 +239,7 @@ public class PncEntitiesImporter {
     }
 
     private String configByName(String name) {
-        Optional<BuildConfigData> maybeConfig = configs.stream().filter(c -> c.getName().equals(name)).findAny();
+        Optional<BuildConfigData> maybeConfig = Optional.ofNullable(configsByName.get(name));
         return maybeConfig
                 .orElseThrow(() -> new RuntimeException(
                         "Build config name " + name + " used to reference a dependency but no such build config defined"))
@@ -175,7 +249,7 @@ public class PncEntitiesImporter {
     private void addBuildConfigIdsToGroup() {
         String configIdsAsString = configs.stream().map(BuildConfigData::getId).map(String::valueOf)
                 .collect(Collectors.joining(" "));
-        Set<String> existing = getExistingGroupConstituents();
+        Set<String> existing = groupConstituents != null ? groupConstituents : getExistingGroupConstituents();
 
         Set<String> target = configs.stream().map(BuildConfigData::getId).collect(Collectors.toSet());
 
@@ -212,63 +286,102 @@ public class PncEntitiesImporter {
     private List<BuildConfigData> getAddOrUpdateBuildConfigs() {
         log.info("Adding/updating build configurations");
         List<BuildConfiguration> currentConfigs = getCurrentBuildConfigs();
+        groupConstituents = currentConfigs.stream().map(BuildConfiguration::getId).collect(Collectors.toSet());
         dropConfigsFromInvalidVersion(currentConfigs, config.getBuilds());
         return updateOrCreate(currentConfigs, config.getBuilds());
     }
 
-    private Optional<BuildConfiguration> getBuildConfigFromName(String name) {
-        try {
-            return maybeSingle(buildConfigClient.getAll(empty(), findByNameQuery(name)));
-        } catch (RemoteResourceException e) {
-            throw new RuntimeException("Failed to get build configuration " + name, e);
+    /**
+     * Find the build configs with the given names, querying for at most {@link #NAMES_PER_QUERY} names at a time
+     */
+    private List<BuildConfiguration> getBuildConfigsFromNames(List<String> names) {
+        List<BuildConfiguration> result = new ArrayList<>();
+        for (int start = 0; start < names.size(); start += NAMES_PER_QUERY) {
+            List<String> batch = names.subList(start, Math.min(start + NAMES_PER_QUERY, names.size()));
+            String nameQuery = batch.stream().map(PncEntitiesImporter::rsqlValue)
+                    .collect(Collectors.joining(",", "name=in=(", ")"));
+            try {
+                toStream(buildConfigClient.getAll(empty(), Optional.of(nameQuery))).filter(c -> batch.contains(c.getName()))
+                        .forEach(result::add);
+            } catch (RemoteResourceException e) {
+                throw new RuntimeException("Failed to get build configurations " + batch, e);
+            }
         }
+        return result;
+    }
+
+    private static String rsqlValue(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
     }
 
     private BuildConfiguration getBuildConfigFromId(String id) {
+        BuildConfiguration buildConfig = buildConfigsById.get(id);
+        if (buildConfig != null) {
+            return buildConfig;
+        }
         try {
-            return buildConfigClient.getSpecific(id);
+            buildConfig = buildConfigClient.getSpecific(id);
         } catch (ClientException e) {
             throw new RuntimeException("Failed to get build configuration " + id, e);
         }
+        buildConfigsById.put(id, buildConfig);
+        return buildConfig;
     }
 
     private List<BuildConfigData> updateOrCreate(List<BuildConfiguration> currentConfigs, List<BuildConfig> builds) {
+        Map<String, BuildConfiguration> existingByName = new HashMap<>();
+        currentConfigs.forEach(c -> existingByName.put(c.getName(), c));
+        // build configs may exist outside of the group
+        List<String> notInGroup = builds.stream().map(BuildConfig::getName).filter(name -> !existingByName.containsKey(name))
+                .collect(Collectors.toList());
+        getBuildConfigsFromNames(notInGroup).forEach(c -> existingByName.put(c.getName(), c));
+        existingByName.values().forEach(c -> buildConfigsById.put(c.getId(), c));
+
         List<BuildConfigData> buildList = new ArrayList<>();
+        List<BuildConfigData> existing = new ArrayList<>();
+        List<BuildConfigData> toCreate = new ArrayList<>();
         for (BuildConfig bc : builds) {
             BuildConfigData data = new BuildConfigData(bc);
-            for (BuildConfiguration config : currentConfigs) {
-                if (config.getName().equals(bc.getName())) {
-                    data.setOldConfig(config);
-                    if (data.shouldBeUpdated()) {
-                        updateBuildConfig(data);
-                    }
-                }
-            }
-            // Check if build exists already (globally)
-            // True = Add to BCS and update BC (maybe ask?)
-            Optional<BuildConfiguration> matchedBuildConfig = getBuildConfigFromName(bc.getName());
-            if (matchedBuildConfig.isPresent()) {
+            BuildConfiguration oldConfig = existingByName.get(bc.getName());
+            if (oldConfig != null) {
                 log.debug("Found matching build config for {}", bc.getName());
-                data.setOldConfig(matchedBuildConfig.get());
-                if (data.shouldBeUpdated()) {
-                    updateBuildConfig(data);
-                }
-                data.setModified(true);
+                data.setOldConfig(oldConfig);
+                existing.add(data);
             } else {
-                log.debug("No matching build config found in the BCS");
-                // False = Create new project/BC
-                BuildConfiguration createdConfig = createBuildConfig(data.getNewConfig());
-                data.setId(createdConfig.getId());
-                data.setModified(true);
                 log.debug("Didn't find matching build config for {}", bc.getName());
+                toCreate.add(data);
             }
+            data.setModified(true);
             buildList.add(data);
         }
+        // checking if a build config should be updated may require checking its branch for modifications
+        List<BuildConfigData> toUpdate = Collections.synchronizedList(new ArrayList<>());
+        runAll(existing, data -> {
+            if (data.shouldBeUpdated()) {
+                toUpdate.add(data);
+            }
+        });
+        log.info("Build configurations: {} to create, {} to update, {} up to date", toCreate.size(), toUpdate.size(),
+                builds.size() - toCreate.size() - toUpdate.size());
+
+        // a build config is created or updated as soon as its repository is available, repositories that are being
+        // created don't hold up the other build configs
+        List<CompletableFuture<?>> changes = new ArrayList<>();
+        toUpdate.forEach(data -> changes.add(repositoryOf(data.getNewConfig())
+                .thenAcceptAsync(repository -> updateBuildConfig(data, repository), executor)));
+        toCreate.forEach(data -> changes.add(repositoryOf(data.getNewConfig()).thenAcceptAsync(repository -> {
+            BuildConfiguration createdConfig = createBuildConfig(data.getNewConfig(), repository);
+            buildConfigsById.put(createdConfig.getId(), createdConfig);
+            data.setId(createdConfig.getId());
+        }, executor)));
+        awaitAll(changes);
+
+        configsByName = buildList.stream().collect(Collectors.toMap(BuildConfigData::getName, Function.identity()));
         return buildList;
     }
 
-    private BuildConfiguration createBuildConfig(BuildConfig buildConfig) {
-        BuildConfiguration config = generatePncBuildConfig(buildConfig);
+    private BuildConfiguration createBuildConfig(BuildConfig buildConfig, SCMRepository repository) {
+        BuildConfiguration config = generatePncBuildConfig(buildConfig, repository);
         try {
             return buildConfigClient.createNew(config);
         } catch (ClientException e) {
@@ -276,10 +389,8 @@ public class PncEntitiesImporter {
         }
     }
 
-    private BuildConfiguration generatePncBuildConfig(BuildConfig buildConfig) {
-        ProjectRef project = getOrGenerateProject(buildConfig.getProject());
-
-        SCMRepository repository = getOrGenerateRepository(buildConfig);
+    private BuildConfiguration generatePncBuildConfig(BuildConfig buildConfig, SCMRepository repository) {
+        ProjectRef project = projectsByName.computeIfAbsent(buildConfig.getProject(), this::getOrGenerateProject);
 
         Environment environment = Environment.builder().id(buildConfig.getEnvironmentId()).build();
         return BuildConfiguration.builder().productVersion(version).parameters(buildConfig.getGenericParameters(null, false))
@@ -287,9 +398,18 @@ public class PncEntitiesImporter {
                 .scmRevision(buildConfig.getScmRevision()).buildScript(buildConfig.getBuildScript()).build();
     }
 
-    private SCMRepository getOrGenerateRepository(BuildConfig buildConfig) {
+    /**
+     * Get the repository of the build config, triggering its creation if it doesn't exist. Build configs of the same repository
+     * share the result, so that the repository is created once.
+     */
+    private CompletableFuture<SCMRepository> repositoryOf(BuildConfig buildConfig) {
+        return repositories.computeIfAbsent(buildConfig.getShortScmURIPath(), path -> CompletableFuture
+                .supplyAsync(() -> getOrGenerateRepository(buildConfig), executor).thenCompose(repository -> repository));
+    }
+
+    private CompletableFuture<SCMRepository> getOrGenerateRepository(BuildConfig buildConfig) {
         Optional<SCMRepository> existingRepository = getExistingRepository(buildConfig);
-        return existingRepository.orElseGet(() -> createRepository(buildConfig));
+        return existingRepository.map(CompletableFuture::completedFuture).orElseGet(() -> createRepository(buildConfig));
     }
 
     private Optional<SCMRepository> getExistingRepository(BuildConfig buildConfig) {
@@ -301,7 +421,7 @@ public class PncEntitiesImporter {
         }
     }
 
-    private SCMRepository createRepository(BuildConfig buildConfig) {
+    private CompletableFuture<SCMRepository> createRepository(BuildConfig buildConfig) {
         String scmUrl = buildConfig.getScmUrl() == null ? buildConfig.getExternalScmUrl() : buildConfig.getScmUrl();
         CreateAndSyncSCMRequest createRepoRequest = CreateAndSyncSCMRequest.builder().preBuildSyncEnabled(true).scmUrl(scmUrl)
                 .build();
@@ -310,26 +430,27 @@ public class PncEntitiesImporter {
             RepositoryCreationResponse response = repoClient.createNew(createRepoRequest);
             SCMRepository repository = response.getRepository();
             if (repository != null) {
-                return repository;
+                return CompletableFuture.completedFuture(repository);
             } else {
-                // a task to create repo has been triggered, let's wait for a while in a hope it will be created:
-                return SleepUtils.waitFor(() -> getExistingRepository(buildConfig).orElse(null), 5, // s
-                        5 * 60, // s
-                        false, "Timed out waiting for repository to be created");
+                // a task to create repo has been triggered, it will be completed when the repository is created:
+                log.info("Waiting for repository {} to be created", scmUrl);
+                return repositoryCreationWaiter.await(scmUrl, () -> getExistingRepository(buildConfig).orElse(null));
             }
         } catch (ClientException e) {
             throw new RuntimeException("Failed to trigger repository creation for " + scmUrl, e);
         }
     }
 
-    private BuildConfiguration updateBuildConfig(BuildConfigData data) {
+    private BuildConfiguration updateBuildConfig(BuildConfigData data, SCMRepository repository) {
         String configId = data.getId();
 
-        BuildConfiguration buildConfiguration = generatePncBuildConfig(data.getNewConfig());
+        BuildConfiguration buildConfiguration = generatePncBuildConfig(data.getNewConfig(), repository);
 
         try {
             buildConfigClient.update(configId, buildConfiguration);
-            return buildConfigClient.getSpecific(configId);
+            BuildConfiguration updated = buildConfigClient.getSpecific(configId);
+            buildConfigsById.put(configId, updated);
+            return updated;
         } catch (ClientException e) {
             throw new RuntimeException("Failed to update build configuration " + configId, e);
         }
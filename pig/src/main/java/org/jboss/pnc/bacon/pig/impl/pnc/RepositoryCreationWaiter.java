@@ -0,0 +1,202 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.bacon.pig.impl.pnc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jboss.pnc.bacon.pig.impl.utils.WebSocketConnection;
+import org.jboss.pnc.dto.SCMRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Waits for SCM repositories, whose creation has been triggered in PNC, to be created.
+ * <p>
+ * A single thread checks all the repositories being created, whenever PNC notifies about a repository creation and at least
+ * every 30 seconds, or every 5 seconds if the notifications are not available. A repository that is not created in 5 minutes
+ * fails.
+ */
+class RepositoryCreationWaiter implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(RepositoryCreationWaiter.class);
+
+    private static final int CONNECT_TIMEOUT = 30_000;
+    private static final long CHECK_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+    private static final long NOTIFIED_CHECK_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+    private static final long TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final URI notificationsUri;
+
+    private final List<Creation> pending = new ArrayList<>();
+    private Thread checker;
+    private WebSocketConnection notifications;
+    private boolean notified;
+    private boolean closed;
+
+    /**
+     * @param notificationsUri uri of the PNC notification WebSocket, <code>null</code> to only poll
+     */
+    RepositoryCreationWaiter(URI notificationsUri) {
+        this.notificationsUri = notificationsUri;
+    }
+
+    /**
+     * Wait for a repository to be created
+     *
+     * @param scmUrl url of the repository
+     * @param lookup finds the repository, returns <code>null</code> if it's not created yet
+     * @return future completed with the repository once it's created
+     */
+    synchronized CompletableFuture<SCMRepository> await(String scmUrl, Supplier<SCMRepository> lookup) {
+        if (closed) {
+            throw new IllegalStateException("The repository creation waiter is closed");
+        }
+        Creation creation = new Creation(scmUrl, lookup);
+        pending.add(creation);
+        if (checker == null) {
+            checker = new Thread(this::check, "repository-creation-waiter");
+            checker.setDaemon(true);
+            checker.start();
+        }
+        return creation.future;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        pending.forEach(creation -> creation.future.completeExceptionally(
+                new RuntimeException("Stopped waiting for repository " + creation.scmUrl + " to be created")));
+        pending.clear();
+        notifyAll();
+    }
+
+    private void check() {
+        subscribe();
+        try {
+            while (true) {
+                List<Creation> creations;
+                synchronized (this) {
+                    if (pending.isEmpty()) {
+                        checker = null;
+                        return;
+                    }
+                    creations = new ArrayList<>(pending);
+                }
+
+                creations.forEach(this::check);
+
+                synchronized (this) {
+                    pending.removeIf(creation -> creation.future.isDone());
+                    if (!pending.isEmpty() && !notified) {
+                        wait(isSubscribed() ? NOTIFIED_CHECK_INTERVAL : CHECK_INTERVAL);
+                    }
+                    notified = false;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+        } finally {
+            unsubscribe();
+        }
+    }
+
+    private void check(Creation creation) {
+        try {
+            SCMRepository repository = creation.lookup.get();
+            if (repository != null) {
+                log.info("Repository {} created", creation.scmUrl);
+                creation.future.complete(repository);
+            } else if (System.currentTimeMillis() > creation.deadline) {
+                creation.future.completeExceptionally(
+                        new RuntimeException("Timed out waiting for repository " + creation.scmUrl + " to be created"));
+            }
+        } catch (RuntimeException e) {
+            creation.future.completeExceptionally(e);
+        }
+    }
+
+    private void subscribe() {
+        if (notificationsUri == null) {
+            return;
+        }
+        try {
+            WebSocketConnection connection = WebSocketConnection.open(notificationsUri, CONNECT_TIMEOUT, this::onNotification,
+                    this::wakeUp);
+            synchronized (this) {
+                notifications = connection;
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("PNC notifications at {} are not available, polling for created repositories", notificationsUri, e);
+        }
+    }
+
+    private void unsubscribe() {
+        WebSocketConnection connection;
+        synchronized (this) {
+            connection = notifications;
+            notifications = null;
+        }
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    private synchronized boolean isSubscribed() {
+        return notifications != null && notifications.isOpen();
+    }
+
+    private void onNotification(String message) {
+        try {
+            JsonNode notification = mapper.readTree(message);
+            String type = notification.path("job").asText() + " " + notification.path("notificationType").asText();
+            if (type.contains("SCM_REPOSITORY") || type.contains("RC_CREATION")) {
+                log.debug("Repository creation notification: {}", type);
+                wakeUp();
+            }
+        } catch (IOException e) {
+            log.debug("Ignoring unparseable PNC notification: {}", message);
+        }
+    }
+
+    private synchronized void wakeUp() {
+        notified = true;
+        notifyAll();
+    }
+
+    private static class Creation {
+        private final String scmUrl;
+        private final Supplier<SCMRepository> lookup;
+        private final long deadline = System.currentTimeMillis() + TIMEOUT;
+        private final CompletableFuture<SCMRepository> future = new CompletableFuture<>();
+
+        private Creation(String scmUrl, Supplier<SCMRepository> lookup) {
+            this.scmUrl = scmUrl;
+            this.lookup = lookup;
+        }
+    }
+}
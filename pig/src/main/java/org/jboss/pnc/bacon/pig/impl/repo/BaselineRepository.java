@@ -0,0 +1,269 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.bacon.pig.impl.repo;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.jboss.pnc.bacon.pig.impl.utils.ChecksumUtils.Algorithm;
+import org.jboss.pnc.bacon.pig.impl.utils.ParallelZipCreator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Repository zip of a previous milestone, used to generate the repository of the current milestone incrementally.
+ * <p>
+ * Files of the current repository that are the same as in the baseline, i.e. have the same path and sha1, are carried over:
+ * their checksums are taken from the baseline and their zip entries are copied from the baseline zip as they are, without
+ * decompressing and compressing them again. Artifacts that the baseline contains don't have to be downloaded, they can be
+ * extracted from the baseline.
+ */
+public class BaselineRepository implements Closeable, ParallelZipCreator.RawEntrySource {
+    private static final Logger log = LoggerFactory.getLogger(BaselineRepository.class);
+
+    private final File zipPath;
+    private final ZipFile zip;
+    /**
+     * entries of the maven repository in the zip, by path relative to the maven repository directory
+     */
+    private final Map<String, ZipArchiveEntry> entries = new HashMap<>();
+    private final Set<String> carriedOver = ConcurrentHashMap.newKeySet();
+    /**
+     * paths of files extracted from the baseline, they are known to be the same without computing their checksums
+     */
+    private final Set<String> extracted = ConcurrentHashMap.newKeySet();
+
+    private BaselineRepository(File zipPath) throws IOException {
+        this.zipPath = zipPath;
+        zip = new ZipFile(zipPath);
+        Enumeration<ZipArchiveEntry> zipEntries = zip.getEntries();
+        while (zipEntries.hasMoreElements()) {
+            ZipArchiveEntry entry = zipEntries.nextElement();
+            String path = repositoryPath(entry.getName());
+            if (path != null && !entry.isDirectory()) {
+                entries.put(path, entry);
+            }
+        }
+    }
+
+    /**
+     * @param zipPath repository zip of a previous milestone
+     * @return the baseline repository, has to be closed after use
+     */
+    public static BaselineRepository open(File zipPath) {
+        if (!zipPath.isFile()) {
+            throw new RuntimeException("Baseline repository " + zipPath.getAbsolutePath() + " does not exist");
+        }
+        try {
+            return new BaselineRepository(zipPath);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read baseline repository " + zipPath.getAbsolutePath(), e);
+        }
+    }
+
+    public boolean contains(String path) {
+        return entries.containsKey(path);
+    }
+
+    /**
+     * @param path path relative to the maven repository directory
+     * @param algorithm checksum algorithm
+     * @return the checksum stored in the baseline, or <code>null</code> if the baseline doesn't have it
+     */
+    public String checksum(String path, Algorithm algorithm) {
+        ZipArchiveEntry entry = entries.get(path + algorithm.getExtension());
+        if (entry == null) {
+            return null;
+        }
+        try (InputStream input = zip.getInputStream(entry)) {
+            // checksum files may contain the file name after the checksum
+            String content = IOUtils.toString(input, StandardCharsets.UTF_8).trim();
+            return content.isEmpty() ? null : content.split("\\s+")[0];
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read " + entry.getName() + " from " + zipPath, e);
+        }
+    }
+
+    /**
+     * Extract a file from the baseline
+     *
+     * @param path path relative to the maven repository directory
+     * @param target file to extract to
+     */
+    public void extract(String path, File target) {
+        ZipArchiveEntry entry = entries.get(path);
+        try (InputStream input = zip.getInputStream(entry)) {
+            target.getParentFile().mkdirs();
+            Files.copy(input, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            extracted.add(path);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to extract " + entry.getName() + " from " + zipPath, e);
+        }
+    }
+
+    /**
+     * Extract the file from the baseline if the baseline has a file with the same path and sha1
+     *
+     * @param path path relative to the maven repository directory
+     * @param sha1 expected sha1 of the file
+     * @param target file to extract to
+     * @return true if the file was extracted
+     */
+    public boolean extractIfSame(String path, String sha1, File target) {
+        if (!contains(path) || !sha1.equalsIgnoreCase(checksum(path, Algorithm.SHA1))) {
+            return false;
+        }
+        log.debug("Extracting {} from the baseline repository", path);
+        extract(path, target);
+        return true;
+    }
+
+    /**
+     * Compare the repository with the baseline. Checksums of the files that didn't change are copied from the baseline and
+     * these files are marked to be copied from the baseline when the repository is zipped. Files extracted from the baseline
+     * are not hashed again.
+     *
+     * @param index index of the current repository
+     */
+    public void carryOver(RepositoryIndex index) {
+        log.info("Comparing the repository with baseline {}", zipPath);
+        List<RepositoryIndex.Entry> files = index.stream().filter(entry -> !entry.isChecksumFile())
+                .collect(Collectors.toList());
+
+        AtomicInteger changed = new AtomicInteger();
+        AtomicInteger added = new AtomicInteger();
+        files.parallelStream().forEach(entry -> {
+            ZipArchiveEntry baselineEntry = entries.get(entry.getPath());
+            if (baselineEntry == null) {
+                added.incrementAndGet();
+            } else if (isSame(index, entry, baselineEntry)) {
+                carryOver(index, entry);
+            } else {
+                changed.incrementAndGet();
+            }
+        });
+
+        Set<String> current = files.stream().map(RepositoryIndex.Entry::getPath).collect(Collectors.toSet());
+        long removed = entries.keySet().stream().filter(path -> !isChecksumFile(path) && !current.contains(path)).count();
+        log.info("Compared to the baseline: {} unchanged, {} changed, {} added, {} removed files",
+                files.size() - changed.get() - added.get(), changed.get(), added.get(), removed);
+    }
+
+    private boolean isSame(RepositoryIndex index, RepositoryIndex.Entry entry, ZipArchiveEntry baselineEntry) {
+        if (baselineEntry.getSize() != entry.getSize()) {
+            return false;
+        }
+        if (extracted.contains(entry.getPath())) {
+            return true;
+        }
+        String baselineSha1 = checksum(entry.getPath(), Algorithm.SHA1);
+        return baselineSha1 != null && baselineSha1.equalsIgnoreCase(index.checksum(entry, Algorithm.SHA1));
+    }
+
+    private void carryOver(RepositoryIndex index, RepositoryIndex.Entry entry) {
+        File file = index.fileOf(entry);
+        carriedOver.add(entry.getPath());
+        for (Algorithm algorithm : Algorithm.values()) {
+            String checksum = checksum(entry.getPath(), algorithm);
+            if (checksum == null) {
+                continue;
+            }
+            File checksumFile = new File(file.getPath() + algorithm.getExtension());
+            try {
+                FileUtils.write(checksumFile, checksum, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to create checksum file: " + checksumFile.getAbsolutePath(), e);
+            }
+            entry.getChecksums().put(algorithm, checksum);
+            carriedOver.add(entry.getPath() + algorithm.getExtension());
+        }
+    }
+
+    @Override
+    public boolean addRawEntry(String name, ParallelZipCreator zipCreator) throws IOException {
+        String path = repositoryPath(name);
+        if (path == null || !carriedOver.contains(path)) {
+            return false;
+        }
+        ZipArchiveEntry source = entries.get(path);
+
+        ZipArchiveEntry entry = new ZipArchiveEntry(name);
+        entry.setMethod(source.getMethod());
+        entry.setCrc(source.getCrc());
+        entry.setSize(source.getSize());
+        entry.setCompressedSize(source.getCompressedSize());
+        entry.setTime(source.getTime());
+        entry.setInternalAttributes(source.getInternalAttributes());
+        entry.setExternalAttributes(source.getExternalAttributes());
+        if (source.getPlatform() == ZipArchiveEntry.PLATFORM_UNIX) {
+            // the unix mode is only kept for entries made on unix, the same as in freshly zipped entries
+            entry.setUnixMode(source.getUnixMode());
+        }
+
+        zipCreator.addRawEntry(entry, () -> zip.getRawInputStream(source));
+        return true;
+    }
+
+    /**
+     * @return path relative to the maven repository directory, for entries named
+     *         <code>[top level directory]/maven-repository/[path]</code>, <code>null</code> for other entries
+     */
+    private static String repositoryPath(String entryName) {
+        String[] segments = entryName.split("/", 3);
+        if (segments.length < 3 || !RepoDescriptor.MAVEN_REPOSITORY.equals(segments[1] + "/") || segments[2].isEmpty()) {
+            return null;
+        }
+        return segments[2];
+    }
+
+    private static boolean isChecksumFile(String path) {
+        for (Algorithm algorithm : Algorithm.values()) {
+            if (path.endsWith(algorithm.getExtension())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        try {
+            zip.close();
+        } catch (IOException e) {
+            log.warn("Failed to close baseline repository {}", zipPath, e);
+        }
+    }
+}
@@ -17,6 +17,9 @@
  */
 package org.jboss.pnc.bacon.pig.impl.repo;
 
+import org.jboss.pnc.bacon.pig.impl.utils.ArtifactCache;
+import org.jboss.pnc.bacon.pig.impl.utils.ArtifactCache.Checksum;
+import org.jboss.pnc.bacon.pig.impl.utils.BatchDownloader;
 import org.jboss.pnc.bacon.pig.impl.utils.FileDownloadUtils;
 import org.jboss.pnc.bacon.pig.impl.utils.GAV;
 
@@ -49,17 +52,103 @@ public class ExternalArtifactDownloader {
     }
 
     public static File downloadExternalArtifact(GAV gav, Path targetRepoContents) {
+        File targetPath = prepareTargetPath(gav, targetRepoContents);
+
+        download(downloadUrl(gav), null, targetPath);
+
+        return targetPath;
+    }
+
+    /**
+     * Schedule download of the artifact in the given batch, the artifact is downloaded once {@link BatchDownloader#await()}
+     * returns
+     */
+    public static File downloadExternalArtifact(GAV gav, Path targetRepoContents, BatchDownloader downloader) {
+        return downloadExternalArtifact(gav, null, targetRepoContents, downloader);
+    }
+
+    /**
+     * Schedule download of the artifact in the given batch, the artifact is downloaded once {@link BatchDownloader#await()}
+     * returns
+     *
+     * @param checksum checksum of the artifact, used to look it up in the {@link ArtifactCache}, may be <code>null</code>
+     */
+    public static File downloadExternalArtifact(GAV gav, Checksum checksum, Path targetRepoContents,
+            BatchDownloader downloader) {
+        File targetPath = prepareTargetPath(gav, targetRepoContents);
+
+        URI downloadUrl = downloadUrl(gav);
+        downloader.submit(downloadUrl, targetPath, () -> download(downloadUrl, checksum, targetPath));
+
+        return targetPath;
+    }
+
+    /**
+     * Schedule download of the artifact in the given batch, unless the baseline repository has the same artifact. The artifact
+     * is compared with the baseline by the sha1 that Indy serves next to it, it is downloaded if the sha1 is not available.
+     *
+     * @param baseline repository of a previous milestone, may be <code>null</code>
+     */
+    public static File downloadExternalArtifact(GAV gav, Path targetRepoContents, BatchDownloader downloader,
+            BaselineRepository baseline) {
+        if (baseline == null || !baseline.contains(gav.toUri())) {
+            return downloadExternalArtifact(gav, targetRepoContents, downloader);
+        }
+        File targetPath = prepareTargetPath(gav, targetRepoContents);
+
+        URI downloadUrl = downloadUrl(gav);
+        downloader.submit(downloadUrl, targetPath, () -> {
+            String sha1 = remoteSha1(downloadUrl);
+            if (sha1 == null || !baseline.extractIfSame(gav.toUri(), sha1, targetPath)) {
+                ArtifactCache.getInstance().downloadTo(downloadUrl, Checksum.strongest(null, sha1, null), targetPath);
+            }
+        });
+
+        return targetPath;
+    }
+
+    private static void download(URI downloadUrl, Checksum checksum, File targetPath) {
+        ArtifactCache cache = ArtifactCache.getInstance();
+        if (checksum == null && cache.isEnabled()) {
+            checksum = Checksum.strongest(null, remoteSha1(downloadUrl), null);
+        }
+        cache.downloadTo(downloadUrl, checksum, targetPath);
+    }
+
+    /**
+     * Indy serves checksums of artifacts next to them, the sha1 is used to look an artifact whose checksum is not known up in
+     * the {@link ArtifactCache} and to compare it with the baseline repository
+     *
+     * @return the sha1 of the artifact, <code>null</code> if it is not available
+     */
+    private static String remoteSha1(URI downloadUrl) {
+        String sha1 = FileDownloadUtils.downloadToString(URI.create(downloadUrl + ".sha1"));
+        if (sha1 == null) {
+            return null;
+        }
+        // the checksum file may contain the file name after the checksum
+        String value = sha1.trim().split("\\s+")[0];
+        return value.matches("[0-9a-fA-F]{40}") ? value : null;
+    }
+
+    private static File prepareTargetPath(GAV gav, Path targetRepoContents) {
         Path versionPath = targetRepoContents.resolve(gav.toVersionPath());
         versionPath.toFile().mkdirs();
 
-        File targetPath = versionPath.resolve(gav.toFileName()).toFile();
+        return versionPath.resolve(gav.toFileName()).toFile();
+    }
 
+    private static URI downloadUrl(GAV gav) {
         String indyUrl = gav.isTemporary() ? TEMPORARY_ARTIFACTS_URL : ARTIFACTS_URL;
 
-        URI downloadUrl = URI.create(String.format("%s/%s", indyUrl, gav.toUri()));
-
-        FileDownloadUtils.downloadTo(downloadUrl, targetPath);
+        return URI.create(String.format("%s/%s", indyUrl, gav.toUri()));
+    }
 
-        return targetPath;
+    /**
+     * @param temporary whether the repository should contain artifacts of temporary builds
+     * @return url of the Indy repository the artifacts are downloaded from
+     */
+    static String repositoryUrl(boolean temporary) {
+        return temporary ? TEMPORARY_ARTIFACTS_URL : ARTIFACTS_URL;
     }
 }
@@ -1,243 +1,182 @@
 package org.jboss.pnc.bacon.pig.impl.repo;
 
-import org.jboss.pnc.bacon.pig.impl.utils.FileUtils;
-import org.jboss.pnc.bacon.pig.impl.utils.ResourceUtils;
+import org.jboss.pnc.bacon.pig.impl.utils.BatchDownloader;
+import org.jboss.pnc.bacon.pig.impl.utils.GAV;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.xml.sax.SAXException;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.UncheckedIOException;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
+ * Adds missing Red Hat parent POMs, and their parents, to a repository.
+ * <p>
+ * The parent POMs are downloaded from Indy, level by level: all the missing parents of the POMs in the repository are
+ * downloaded in parallel, then all the missing parents of the downloaded POMs, and so on.
+ *
  * @author Ken Finnigan
  */
 public class ParentPomDownloader {
 
     public static final Logger log = LoggerFactory.getLogger(ParentPomDownloader.class);
 
-    private ParentPomDownloader() {
-    }
+    private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
 
-    public static void addParentPoms(Path repoPath) {
-        if (!Files.isDirectory(repoPath)) {
-            throw new IllegalStateException("Directory expected to be present: " + repoPath);
-        }
+    private final RepositoryIndex index;
 
-        try {
-            new ParentPomDownloader().process(repoPath);
-        } catch (IOException e) {
-            throw new RuntimeException("Unable to download parent poms", e);
-        }
-    }
+    private final Path repoPath;
 
-    private void process(final Path repoPath) throws IOException {
-        Set<Pom> pomArtifacts = retrievePoms(repoPath);
-
-        File execDir = FileUtils.mkTempDir("parent-pom-retrieval");
-
-        pomArtifacts.stream().filter(Pom::hasParent).forEach(p -> processPoms(repoPath, p));
-
-        String settingsXml = ResourceUtils.extractToTmpFile("/indy-settings.xml", "settings", ".xml").getAbsolutePath();
-        toDownload.parallelStream().forEach(gav -> {
-            log.debug("Downloading: {}", gav.toString());
-            // Call Maven to download dependency
-
-            ProcessBuilder builder = new ProcessBuilder("mvn", "-B",
-                    "org.apache.maven.plugins:maven-dependency-plugin:3.0.1:get", "-Dartifact=" + gav.toString(),
-                    "-Dmaven.repo.local=" + repoPath.toAbsolutePath().toString(), "-s", settingsXml);
-
-            builder.directory(execDir).inheritIO();
-
-            Process process = null;
-            try {
-                process = builder.start();
-            } catch (IOException e) {
-                log.error("Unable to download gav {}", gav.toString(), e);
-                System.out.println(14);
-            }
+    private final BaselineRepository baseline;
 
-            while (process.isAlive()) {
-                try {
-                    Thread.sleep(1000);
-                    if (process.exitValue() == 0) {
-                        break;
-                    }
-                } catch (IllegalThreadStateException e) {
-                    // ignore as process not exited
-                } catch (InterruptedException e) {
-                    break;
-                }
-            }
-        }
+    private final Set<GAV> alreadyChecked = ConcurrentHashMap.newKeySet();
 
-        );
+    private ParentPomDownloader(RepositoryIndex index, BaselineRepository baseline) {
+        this.index = index;
+        this.repoPath = index.getRoot();
+        this.baseline = baseline;
     }
 
-    private void processPoms(Path repoPath, Pom pom) {
-        PomGAV coords = parentCoordinates(pom);
-        if (!coords.version.contains("redhat")) {
-            // community parent POM not required
-            return;
-        }
-
-        Path parentDir = artifactDir(repoPath, coords);
-        Path parentPomPath = parentDir.resolve(coords.artifactId() + "-" + coords.version() + ".pom");
-
-        if (!alreadyChecked.contains(coords)) {
-            if (!Files.isRegularFile(parentPomPath)) {
-                // File missing
-                toDownload.add(coords);
-            }
-
-            alreadyChecked.add(coords);
+    public static void addParentPoms(Path repoPath) {
+        if (!Files.isDirectory(repoPath)) {
+            throw new IllegalStateException("Directory expected to be present: " + repoPath);
         }
-    }
 
-    private Set<Pom> retrievePoms(Path repoPath) throws IOException {
-        return Files.walk(repoPath).filter(Files::isRegularFile).filter(ParentPomDownloader::isPom).map(Pom::new)
-                .collect(Collectors.toSet());
+        addParentPoms(RepositoryIndex.build(repoPath.toFile()));
     }
 
-    private static boolean isPom(Path path) {
-        return path.toString().endsWith(".pom");
+    /**
+     * Download the missing parent POMs to the indexed repository and add them to the index
+     *
+     * @param index index of the repository
+     */
+    public static void addParentPoms(RepositoryIndex index) {
+        addParentPoms(index, null);
     }
 
-    private static Path artifactDir(Path repoPath, PomGAV coords) {
-        Path groupDir = repoPath.resolve(coords.groupId().replace('.', File.separatorChar));
-        Path artifactDir = groupDir.resolve(coords.artifactId());
-        return artifactDir.resolve(coords.version());
+    /**
+     * Add the missing parent POMs to the indexed repository, taking the ones the baseline repository contains from the baseline
+     * instead of downloading them
+     *
+     * @param index index of the repository
+     * @param baseline repository of a previous milestone, may be <code>null</code>
+     */
+    public static void addParentPoms(RepositoryIndex index, BaselineRepository baseline) {
+        new ParentPomDownloader(index, baseline).process();
     }
 
-    private PomGAV parentCoordinates(Pom pom) {
-        try {
-            Document pomDoc = pom.parse();
+    private void process() {
+        Set<GAV> toDownload = missingParents(index.stream().filter(entry -> isPom(entry.getPath())).map(index::fileOf));
 
-            return new PomGAV(parentGroupIdExpression().evaluate(pomDoc), parentArtifactIdExpression().evaluate(pomDoc),
-                    parentVersionExpression().evaluate(pomDoc));
-        } catch (IOException | SAXException | ParserConfigurationException | XPathExpressionException e) {
-            throw new RuntimeException(e);
+        while (!toDownload.isEmpty()) {
+            log.debug("Downloading parent poms: {}", toDownload);
+            Map<GAV, File> downloaded = download(toDownload);
+            List<File> poms = downloaded.values().stream().filter(File::isFile).collect(Collectors.toList());
+            poms.forEach(index::add);
+            toDownload = missingParents(poms.stream());
         }
     }
 
-    private XPath xPath() {
-        if (xpath == null) {
-            XPathFactory xPathFactory = XPathFactory.newInstance();
-            xpath = xPathFactory.newXPath();
+    private Map<GAV, File> download(Set<GAV> poms) {
+        BatchDownloader downloader = new BatchDownloader();
+        Map<GAV, File> result = new HashMap<>();
+        for (GAV pom : poms) {
+            result.put(pom, ExternalArtifactDownloader.downloadExternalArtifact(pom, repoPath, downloader, baseline));
         }
-        return xpath;
-    }
-
-    private XPathExpression parentGroupIdExpression() throws XPathExpressionException {
-        if (parentGroupIdExpression == null) {
-            parentGroupIdExpression = xPath().compile("/project/parent/groupId");
+        try {
+            downloader.await();
+        } catch (RuntimeException e) {
+            log.error("Unable to download some of the parent poms", e);
         }
-        return parentGroupIdExpression;
+        result.values().removeAll(downloader.getFailedTargets());
+        return result;
     }
 
-    private XPathExpression parentArtifactIdExpression() throws XPathExpressionException {
-        if (parentArtifactIdExpression == null) {
-            parentArtifactIdExpression = xPath().compile("/project/parent/artifactId");
-        }
-        return parentArtifactIdExpression;
+    private Set<GAV> missingParents(Stream<File> poms) {
+        return poms.parallel().map(pom -> parentCoordinates(pom.toPath())).filter(Objects::nonNull)
+                // community parent POM not required
+                .filter(coords -> coords.getVersion().contains("redhat")).filter(alreadyChecked::add)
+                .filter(coords -> !index.getEntries().containsKey(coords.toUri())).collect(Collectors.toSet());
     }
 
-    private XPathExpression parentVersionExpression() throws XPathExpressionException {
-        if (parentVersionExpression == null) {
-            parentVersionExpression = xPath().compile("/project/parent/version");
-        }
-        return parentVersionExpression;
+    private static boolean isPom(String path) {
+        return path.endsWith(".pom");
     }
 
-    private Set<PomGAV> alreadyChecked = new HashSet<>();
-
-    private Set<PomGAV> toDownload = new HashSet<>();
-
-    private XPath xpath;
-
-    private XPathExpression parentGroupIdExpression;
-
-    private XPathExpression parentArtifactIdExpression;
-
-    private XPathExpression parentVersionExpression;
-
-    private class Pom {
-        private final Path path;
-
-        private DocumentBuilder documentBuilder;
-
-        Pom(Path path) {
-            this.path = path;
-        }
-
-        public Path path() {
-            return path;
-        }
-
-        boolean hasParent() {
+    /**
+     * Read the parent coordinates of a POM. The POM is read up to the end of the <code>parent</code> element; as the children
+     * of <code>project</code> may come in any order, a POM without a parent is read whole.
+     *
+     * @return coordinates of the parent POM or <code>null</code> if the POM does not have a parent or can't be parsed
+     */
+    private static GAV parentCoordinates(Path pom) {
+        try (InputStream input = Files.newInputStream(pom)) {
+            XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(input);
             try {
-                return new String(Files.readAllBytes(path), StandardCharsets.UTF_8).contains("<parent>");
-            } catch (IOException e) {
-                throw new UncheckedIOException(e);
-            }
-        }
-
-        Document parse() throws IOException, SAXException, ParserConfigurationException {
-            final DocumentBuilder documentBuilder = documentBuilder();
-            return documentBuilder.parse(path.toFile());
-        }
-
-        private DocumentBuilder documentBuilder() throws ParserConfigurationException {
-            if (documentBuilder == null) {
-                documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+                return parentCoordinates(reader);
+            } finally {
+                reader.close();
             }
-            return documentBuilder;
+        } catch (IOException | XMLStreamException e) {
+            log.warn("Unable to read parent of {}, its parent poms won't be added: {}", pom, e.getMessage());
+            return null;
         }
     }
 
-    private class PomGAV {
-        private final String groupId;
-
-        private final String artifactId;
-
-        private final String version;
-
-        PomGAV(String groupId, String artifactId, String version) {
-            this.groupId = groupId;
-            this.artifactId = artifactId;
-            this.version = version;
-        }
-
-        String groupId() {
-            return groupId;
-        }
-
-        String artifactId() {
-            return artifactId;
-        }
-
-        String version() {
-            return version;
-        }
-
-        @Override
-        public String toString() {
-            return groupId + ':' + artifactId + ':' + version + ":pom";
+    private static GAV parentCoordinates(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 0;
+        boolean inParent = false;
+        String groupId = null;
+        String artifactId = null;
+        String version = null;
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                String name = reader.getLocalName();
+                if (depth == 2 && "parent".equals(name)) {
+                    inParent = true;
+                } else if (inParent && depth == 3) {
+                    switch (name) {
+                        case "groupId":
+                            groupId = reader.getElementText().trim();
+                            depth--;
+                            break;
+                        case "artifactId":
+                            artifactId = reader.getElementText().trim();
+                            depth--;
+                            break;
+                        case "version":
+                            version = reader.getElementText().trim();
+                            depth--;
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (inParent && depth == 2) {
+                    boolean complete = groupId != null && artifactId != null && version != null;
+                    return complete ? new GAV(groupId, artifactId, version, "pom") : null;
+                }
+                depth--;
+            }
         }
+        return null;
     }
 }
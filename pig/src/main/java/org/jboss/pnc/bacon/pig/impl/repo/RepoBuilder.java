@@ -34,6 +34,7 @@ import org.w3c.dom.Node;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -64,9 +65,14 @@ public class RepoBuilder {
 
     public File build(File bomFile) {
         try {
-            File projectLocation = createProject(bomFile);
-            String settingsXml = ResourceUtils.extractToTmpFile("/indy-settings.xml", "settings", ".xml").getAbsolutePath();
-            File m2Repo = buildProjectWithOverriddenM2(projectLocation, settingsXml);
+            File m2Repo;
+            if (Boolean.TRUE.equals(config.getFlow().getRepositoryGeneration().getResolveInProcess())) {
+                m2Repo = resolveInProcess(bomFile);
+            } else {
+                File projectLocation = createProject(bomFile);
+                String settingsXml = ResourceUtils.extractToTmpFile("/indy-settings.xml", "settings", ".xml").getAbsolutePath();
+                m2Repo = buildProjectWithOverriddenM2(projectLocation, settingsXml);
+            }
             RepositoryUtils.removeIrrelevantFiles(m2Repo);
             if (removeGeneratedM2Dups) {
                 RepositoryUtils.keepOnlyLatestRedHatArtifacts(m2Repo);
@@ -77,6 +83,30 @@ public class RepoBuilder {
         }
     }
 
+    private File resolveInProcess(File bomFile) {
+        log.debug("Resolving the redhat dependencies of the BOM with Maven Resolver");
+        File repoParentDir = new File(org.jboss.pnc.bacon.pig.impl.utils.FileUtils.mkTempDir("repository"),
+                topLevelDirectoryName);
+        File repoDir = new File(repoParentDir, RepoDescriptor.MAVEN_REPOSITORY);
+        repoDir.mkdirs();
+
+        // imported BOMs are not resolved, the same as in the generated project
+        List<GAV> managedDependencies = parseBomDependencies(bomFile).stream().filter(gav -> !"import".equals(gav.getScope()))
+                .collect(Collectors.toList());
+        List<GAV> dependencies = managedDependencies.stream().filter(gav -> gav.getVersion().contains("redhat"))
+                .collect(Collectors.toList());
+
+        List<String> repositories = new ArrayList<>();
+        repositories.add(ExternalArtifactDownloader.repositoryUrl(false));
+        if (dependencies.stream().anyMatch(GAV::isTemporary)) {
+            repositories.add(ExternalArtifactDownloader.repositoryUrl(true));
+        }
+
+        Boolean includeJavadoc = config.getFlow().getRepositoryGeneration().getIncludeJavadoc();
+        new RepoResolver(repoDir, repositories).resolve(dependencies, managedDependencies, Boolean.TRUE.equals(includeJavadoc));
+        return repoParentDir;
+    }
+
     private File buildProjectWithOverriddenM2(File projectLocation, String settingsXml) {
         log.debug("Building the project in {} with overwritten local repository", projectLocation.getAbsolutePath());
         boolean noFailure = true;
@@ -133,12 +163,16 @@ public class RepoBuilder {
     }
 
     static String extractRedhatDependencies(File bomFile) {
+        return parseBomDependencies(bomFile).stream().filter(gav -> gav.getVersion().contains("redhat"))
+                .map(GAV::asBomXmlDependency).collect(Collectors.joining("\n"));
+    }
+
+    private static List<GAV> parseBomDependencies(File bomFile) {
         Map<String, String> properties = XmlUtils.getProperties(bomFile);
 
         List<Node> dependencyNodes = XmlUtils.listNodes(bomFile, "/project/dependencyManagement/dependencies/dependency");
 
         return dependencyNodes.stream().map(Element.class::cast).map(element -> GAV.fromXml(element, properties))
-                .filter(gav -> gav.getVersion().contains("redhat")).map(GAV::asBomXmlDependency)
-                .collect(Collectors.joining("\n"));
+                .collect(Collectors.toList());
     }
 }
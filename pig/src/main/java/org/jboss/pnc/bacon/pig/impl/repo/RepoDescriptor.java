@@ -21,12 +21,6 @@ import org.jboss.pnc.bacon.pig.impl.utils.GAV;
 
 import java.io.File;
 import java.util.Collection;
-import java.util.Comparator;
-import java.util.List;
-import java.util.Set;
-import java.util.TreeSet;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * @author Michal Szynkiewicz, michal.l.szynkiewicz@gmail.com <br>
@@ -34,20 +28,11 @@ import java.util.stream.Stream;
  */
 public class RepoDescriptor {
 
-    public static final String[] CHECKSUM_EXTENSIONS = { ".md5", ".sha1" };
+    public static final String[] CHECKSUM_EXTENSIONS = { ".md5", ".sha1", ".sha256", ".sha512" };
     public static final String MAVEN_REPOSITORY = "maven-repository/";
 
     public static Collection<GAV> listGavs(File m2RepoDirectory) {
-        List<GAV> allGavs = listFiles(m2RepoDirectory).stream()
-                .filter(f -> Stream.of(CHECKSUM_EXTENSIONS).noneMatch(ext -> f.getName().endsWith(ext)))
-                .map(f -> GAV.fromFileName(f.getAbsolutePath(), MAVEN_REPOSITORY)).collect(Collectors.toList());
-        Set<GAV> resultSet = new TreeSet<>(Comparator.comparing(GAV::toGav));
-        resultSet.addAll(allGavs);
-        return resultSet;
-    }
-
-    public static Collection<File> listFiles(File m2RepoDirectory) {
-        return org.apache.commons.io.FileUtils.listFiles(m2RepoDirectory, null, true);
+        return RepositoryIndex.build(m2RepoDirectory).getGavs();
     }
 
     private RepoDescriptor() {
@@ -22,10 +22,12 @@ import org.jboss.pnc.bacon.pig.impl.common.DeliverableManager;
 import org.jboss.pnc.bacon.pig.impl.config.AdditionalArtifactsFromBuild;
 import org.jboss.pnc.bacon.pig.impl.config.Config;
 import org.jboss.pnc.bacon.pig.impl.config.RepoGenerationData;
+import org.jboss.pnc.bacon.pig.impl.config.RepoGenerationStrategy;
 import org.jboss.pnc.bacon.pig.impl.documents.Deliverables;
 import org.jboss.pnc.bacon.pig.impl.pnc.ArtifactWrapper;
 import org.jboss.pnc.bacon.pig.impl.pnc.BuildInfoCollector;
 import org.jboss.pnc.bacon.pig.impl.pnc.PncBuild;
+import org.jboss.pnc.bacon.pig.impl.utils.BatchDownloader;
 import org.jboss.pnc.bacon.pig.impl.utils.FileUtils;
 import org.jboss.pnc.bacon.pig.impl.utils.GAV;
 import org.jboss.pnc.bacon.pig.impl.utils.ResourceUtils;
@@ -50,6 +52,11 @@ public class RepoManager extends DeliverableManager<RepoGenerationData, Reposito
     @Getter
     private final RepoGenerationData generationData;
     private File targetRepoContentsDir;
+    /**
+     * repository zip of a previous milestone, open while the repository is prepared, <code>null</code> if the repository is not
+     * generated incrementally
+     */
+    private BaselineRepository baseline;
     private final boolean removeGeneratedM2Dups;
     private final Path configurationDirectory;
 
@@ -63,6 +70,19 @@ public class RepoManager extends DeliverableManager<RepoGenerationData, Reposito
     }
 
     public RepositoryData prepare() {
+        if (generationData.getStrategy() == RepoGenerationStrategy.IGNORE) {
+            log.info("Ignoring repository zip generation");
+            return null;
+        }
+        try (BaselineRepository baseline = openBaseline()) {
+            this.baseline = baseline;
+            return prepareRepository();
+        } finally {
+            this.baseline = null;
+        }
+    }
+
+    private RepositoryData prepareRepository() {
         switch (generationData.getStrategy()) {
             case DOWNLOAD:
                 return downloadAndRepackage();
@@ -70,9 +90,6 @@ public class RepoManager extends DeliverableManager<RepoGenerationData, Reposito
                 return generate();
             case PACK_ALL:
                 return packAllBuiltAndDependencies();
-            case IGNORE:
-                log.info("Ignoring repository zip generation");
-                return null;
             default:
                 throw new IllegalStateException("Unsupported repository generation strategy");
         }
@@ -91,7 +108,16 @@ public class RepoManager extends DeliverableManager<RepoGenerationData, Reposito
         File sourceDir = new File(workDir, "maven-repository");
         sourceDir.mkdirs();
 
-        artifactsToPack.forEach(a -> ExternalArtifactDownloader.downloadExternalArtifact(a.toGAV(), sourceDir.toPath()));
+        BatchDownloader downloader = new BatchDownloader();
+        artifactsToPack.forEach(a -> {
+            String path = a.toGAV().toUri();
+            if (baseline != null && a.getSha1() != null
+                    && baseline.extractIfSame(path, a.getSha1(), new File(sourceDir, path))) {
+                return;
+            }
+            ExternalArtifactDownloader.downloadExternalArtifact(a.toGAV(), a.getChecksum(), sourceDir.toPath(), downloader);
+        });
+        downloader.await();
         return repackage(sourceDir);
     }
 
@@ -110,16 +136,35 @@ public class RepoManager extends DeliverableManager<RepoGenerationData, Reposito
 
         addAdditionalArtifacts();
 
-        ParentPomDownloader.addParentPoms(targetRepoContentsDir.toPath());
+        RepositoryIndex index = RepositoryIndex.build(targetRepoContentsDir);
+
+        ParentPomDownloader.addParentPoms(index, baseline);
+
+        RepositoryUtils.removeCommunityArtifacts(index);
+        RepositoryUtils.removeIrrelevantFiles(index);
 
-        RepositoryUtils.removeCommunityArtifacts(targetRepoContentsDir);
-        RepositoryUtils.removeIrrelevantFiles(targetRepoContentsDir);
+        if (baseline != null) {
+            baseline.carryOver(index);
+        }
+        RepositoryUtils.addCheckSums(index);
 
-        RepositoryUtils.addCheckSums(targetRepoContentsDir);
+        if (baseline != null) {
+            log.debug("zipping the repository, copying unchanged files from the baseline");
+            FileUtils.zip(targetZipPath.toFile(), targetTopLevelDirectory.getParentFile(), targetTopLevelDirectory, baseline);
+        } else {
+            zip(targetTopLevelDirectory, targetZipPath);
+        }
 
-        zip(targetTopLevelDirectory, targetZipPath);
+        return result(index, targetZipPath);
+    }
 
-        return result(targetTopLevelDirectory, targetZipPath);
+    private BaselineRepository openBaseline() {
+        String baselineRepository = generationData.getBaselineRepository();
+        if (baselineRepository == null) {
+            return null;
+        }
+        log.info("Generating the repository incrementally, against {}", baselineRepository);
+        return BaselineRepository.open(new File(baselineRepository));
     }
 
     private File download() {
@@ -133,24 +178,34 @@ public class RepoManager extends DeliverableManager<RepoGenerationData, Reposito
     }
 
     private void addAdditionalArtifacts() {
+        BatchDownloader downloader = new BatchDownloader();
+
         List<AdditionalArtifactsFromBuild> artifactList = generationData.getAdditionalArtifacts();
         artifactList.forEach(artifacts -> {
             PncBuild build = getBuild(artifacts.getFrom());
-            artifacts.getDownload().forEach(regex -> downloadArtifact(build.findArtifact(regex)));
+            artifacts.getDownload().forEach(regex -> downloadArtifact(build.findArtifact(regex), downloader));
         });
 
         generationData.getExternalAdditionalArtifacts().stream().map(GAV::fromColonSeparatedGAPV)
-                .forEach(this::downloadExternalArtifact);
+                .forEach(gav -> downloadExternalArtifact(gav, downloader));
+
+        downloader.await();
     }
 
-    private void downloadExternalArtifact(GAV gav) {
-        ExternalArtifactDownloader.downloadExternalArtifact(gav, targetRepoContentsDir.toPath());
+    private void downloadExternalArtifact(GAV gav, BatchDownloader downloader) {
+        ExternalArtifactDownloader.downloadExternalArtifact(gav, targetRepoContentsDir.toPath(), downloader, baseline);
     }
 
-    private void downloadArtifact(ArtifactWrapper artifact) {
-        Path versionPath = targetRepoContentsDir.toPath().resolve(artifact.toGAV().toVersionPath());
-        versionPath.toFile().mkdirs();
-        artifact.downloadToDirectory(versionPath);
+    private void downloadArtifact(ArtifactWrapper artifact, BatchDownloader downloader) {
+        String versionPath = artifact.toGAV().toVersionPath();
+        Path versionDir = targetRepoContentsDir.toPath().resolve(versionPath);
+        versionDir.toFile().mkdirs();
+        String path = versionPath + "/" + artifact.getFileName();
+        if (baseline != null && artifact.getSha1() != null
+                && baseline.extractIfSame(path, artifact.getSha1(), versionDir.resolve(artifact.getFileName()).toFile())) {
+            return;
+        }
+        artifact.downloadToDirectory(versionDir, downloader);
     }
 
     public RepositoryData generate() {
@@ -172,11 +227,10 @@ public class RepoManager extends DeliverableManager<RepoGenerationData, Reposito
         return config.getTopLevelDirectoryPrefix() + "maven-repository";
     }
 
-    private RepositoryData result(File targetTopLevelDirectory, Path targetZipPath) {
+    private RepositoryData result(RepositoryIndex index, Path targetZipPath) {
         RepositoryData result = new RepositoryData();
-        File contentsDirectory = new File(targetTopLevelDirectory, "maven-repository");
-        result.setFiles(RepoDescriptor.listFiles(contentsDirectory));
-        result.setGavs(RepoDescriptor.listGavs(contentsDirectory));
+        result.setIndex(index);
+        result.setGavs(index.getGavs());
         result.setRepositoryPath(targetZipPath);
         return result;
     }
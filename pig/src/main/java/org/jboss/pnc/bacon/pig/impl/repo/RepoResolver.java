@@ -0,0 +1,193 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.bacon.pig.impl.repo;
+
+import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.ArtifactType;
+import org.eclipse.aether.artifact.ArtifactTypeRegistry;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.artifact.DefaultArtifactType;
+import org.eclipse.aether.collection.CollectRequest;
+import org.eclipse.aether.collection.DependencyCollectionException;
+import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.DependencyNode;
+import org.eclipse.aether.impl.DefaultServiceLocator;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.repository.RepositoryPolicy;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.resolution.ArtifactResult;
+import org.eclipse.aether.spi.connector.RepositoryConnectorFactory;
+import org.eclipse.aether.spi.connector.transport.TransporterFactory;
+import org.eclipse.aether.transport.file.FileTransporterFactory;
+import org.eclipse.aether.transport.http.HttpTransporterFactory;
+import org.eclipse.aether.util.graph.visitor.PreorderNodeListGenerator;
+import org.jboss.pnc.bacon.pig.impl.utils.GAV;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Resolves artifacts with their dependencies to a local maven repository, in-process, with Maven Resolver.
+ * <p>
+ * The dependency graph is collected once, then all the artifacts of the graph, and optionally their javadocs, are downloaded in
+ * a single batch. The number of concurrent downloads can be set with the <code>pig.resolver.threads</code> system property.
+ */
+public class RepoResolver {
+    private static final Logger log = LoggerFactory.getLogger(RepoResolver.class);
+
+    private static final int THREADS = Integer.getInteger("pig.resolver.threads", 10);
+    private static final String JAVADOC = "javadoc";
+    private static final ArtifactType BUNDLE = new DefaultArtifactType("bundle", "jar", "", "java");
+
+    private final RepositorySystem system;
+    private final DefaultRepositorySystemSession session;
+    private final List<RemoteRepository> repositories;
+
+    /**
+     * @param localRepository directory to resolve the artifacts to, artifacts are stored in the standard maven repository
+     *        layout, without resolver tracking files
+     * @param repositoryUrls urls of the remote repositories to resolve artifacts from
+     */
+    public RepoResolver(File localRepository, List<String> repositoryUrls) {
+        system = newRepositorySystem();
+
+        session = MavenRepositorySystemUtils.newSession();
+        session.setLocalRepositoryManager(
+                system.newLocalRepositoryManager(session, new LocalRepository(localRepository, "simple")));
+        session.setConfigProperty("aether.connector.basic.threads", THREADS);
+        session.setChecksumPolicy(RepositoryPolicy.CHECKSUM_POLICY_WARN);
+        session.setUpdatePolicy(RepositoryPolicy.UPDATE_POLICY_NEVER);
+        // bundles are only known to Maven builds that use the maven-bundle-plugin extension
+        ArtifactTypeRegistry types = session.getArtifactTypeRegistry();
+        session.setArtifactTypeRegistry(type -> BUNDLE.getId().equals(type) ? BUNDLE : types.get(type));
+
+        repositories = new ArrayList<>();
+        for (int i = 0; i < repositoryUrls.size(); i++) {
+            repositories.add(new RemoteRepository.Builder("repo-" + i, "default", repositoryUrls.get(i)).build());
+        }
+    }
+
+    /**
+     * Resolve the dependencies and their transitive dependencies
+     *
+     * @param dependencies artifacts to resolve
+     * @param managedDependencies dependency management, e.g. the contents of the BOM
+     * @param includeJavadoc if true, the javadoc jars of all the resolved artifacts are downloaded too, artifacts without
+     *        javadoc are skipped
+     */
+    public void resolve(List<GAV> dependencies, List<GAV> managedDependencies, boolean includeJavadoc) {
+        CollectRequest collectRequest = new CollectRequest();
+        collectRequest.setDependencies(dependencies.stream().map(this::toDependency).collect(Collectors.toList()));
+        collectRequest
+                .setManagedDependencies(managedDependencies.stream().map(this::toDependency).collect(Collectors.toList()));
+        collectRequest.setRepositories(repositories);
+
+        DependencyNode root;
+        try {
+            log.info("Collecting dependencies of {} artifacts", dependencies.size());
+            root = system.collectDependencies(session, collectRequest).getRoot();
+        } catch (DependencyCollectionException e) {
+            throw new RuntimeException("Failed to collect dependencies", e);
+        }
+
+        PreorderNodeListGenerator nodes = new PreorderNodeListGenerator();
+        root.accept(nodes);
+
+        Set<Artifact> artifacts = new LinkedHashSet<>(nodes.getArtifacts(false));
+        List<ArtifactRequest> requests = new ArrayList<>();
+        for (Artifact artifact : artifacts) {
+            requests.add(new ArtifactRequest(artifact, repositories, null));
+            if (includeJavadoc && "jar".equals(artifact.getExtension()) && artifact.getClassifier().isEmpty()) {
+                Artifact javadoc = new DefaultArtifact(artifact.getGroupId(), artifact.getArtifactId(), JAVADOC, "jar",
+                        artifact.getVersion());
+                requests.add(new ArtifactRequest(javadoc, repositories, null));
+            }
+        }
+
+        log.info("Resolving {} artifacts", requests.size());
+        try {
+            system.resolveArtifacts(session, requests);
+        } catch (ArtifactResolutionException e) {
+            handleFailures(e.getResults());
+        }
+    }
+
+    private void handleFailures(List<ArtifactResult> results) {
+        List<String> failures = new ArrayList<>();
+        for (ArtifactResult result : results) {
+            if (result.isResolved()) {
+                continue;
+            }
+            Artifact artifact = result.getRequest().getArtifact();
+            if (JAVADOC.equals(artifact.getClassifier())) {
+                log.warn("No javadoc found for {}", artifact);
+            } else {
+                failures.add(artifact + ": " + result.getExceptions());
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new RuntimeException("Failed to resolve " + failures.size() + " artifacts:\n" + String.join("\n", failures));
+        }
+    }
+
+    /**
+     * The type of a dependency is mapped to its extension and classifier as Maven does, e.g. a <code>test-jar</code> is a jar
+     * with the <code>tests</code> classifier. Unknown types are used as the extension.
+     */
+    private Dependency toDependency(GAV gav) {
+        String packaging = gav.getPackaging() == null || gav.getPackaging().isEmpty() ? "jar" : gav.getPackaging();
+        String classifier = gav.getClassifier() == null || gav.getClassifier().isEmpty() ? null : gav.getClassifier();
+        ArtifactType type = session.getArtifactTypeRegistry().get(packaging);
+
+        Artifact artifact;
+        if (type != null) {
+            // the type's classifier is used if the dependency doesn't have one
+            artifact = new DefaultArtifact(gav.getGroupId(), gav.getArtifactId(), classifier, type.getExtension(),
+                    gav.getVersion(), type);
+        } else {
+            artifact = new DefaultArtifact(gav.getGroupId(), gav.getArtifactId(), classifier, packaging, gav.getVersion());
+        }
+        return new Dependency(artifact, gav.getScope());
+    }
+
+    private static RepositorySystem newRepositorySystem() {
+        DefaultServiceLocator locator = MavenRepositorySystemUtils.newServiceLocator();
+        locator.addService(RepositoryConnectorFactory.class, BasicRepositoryConnectorFactory.class);
+        locator.addService(TransporterFactory.class, HttpTransporterFactory.class);
+        locator.addService(TransporterFactory.class, FileTransporterFactory.class);
+        locator.setErrorHandler(new DefaultServiceLocator.ErrorHandler() {
+            @Override
+            public void serviceCreationFailed(Class<?> type, Class<?> impl, Throwable exception) {
+                log.error("Failed to create resolver service {}", impl, exception);
+            }
+        });
+        return locator.getService(RepositorySystem.class);
+    }
+}
@@ -20,7 +20,6 @@ package org.jboss.pnc.bacon.pig.impl.repo;
 import lombok.Data;
 import org.jboss.pnc.bacon.pig.impl.utils.GAV;
 
-import java.io.File;
 import java.nio.file.Path;
 import java.util.Collection;
 
@@ -31,6 +30,6 @@ import java.util.Collection;
 @Data
 public class RepositoryData {
     private Collection<GAV> gavs;
-    private Collection<File> files;
+    private RepositoryIndex index;
     private Path repositoryPath;
 }
@@ -0,0 +1,288 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.bacon.pig.impl.repo;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.jboss.pnc.bacon.pig.impl.utils.ChecksumUtils;
+import org.jboss.pnc.bacon.pig.impl.utils.ChecksumUtils.Algorithm;
+import org.jboss.pnc.bacon.pig.impl.utils.GAV;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * In-memory index of a maven repository directory, built in a single walk of the directory.
+ * <p>
+ * Checksum files are not indexed separately, they are recorded as checksums of the files they belong to. The steps that modify
+ * the repository update the index, so that the repository doesn't have to be walked again.
+ */
+@Data
+@NoArgsConstructor
+public class RepositoryIndex {
+    private Path root;
+    private Map<String, Entry> entries = new TreeMap<>();
+
+    private RepositoryIndex(Path root) {
+        this.root = root;
+    }
+
+    /**
+     * Index the maven repository
+     *
+     * @param m2RepoDirectory the directory containing the group directories of the repository
+     * @return the index
+     */
+    public static RepositoryIndex build(File m2RepoDirectory) {
+        RepositoryIndex index = new RepositoryIndex(m2RepoDirectory.toPath().toAbsolutePath());
+        Map<String, Long> checksumFiles = new TreeMap<>();
+        try {
+            Files.walkFileTree(index.root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        String path = index.relativize(file);
+                        if (checksumAlgorithm(path) != null) {
+                            checksumFiles.put(path, attrs.size());
+                        } else {
+                            index.entries.put(path, new Entry(path, attrs.size()));
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to index repository " + m2RepoDirectory.getAbsolutePath(), e);
+        }
+
+        checksumFiles.forEach((path, size) -> {
+            Algorithm algorithm = checksumAlgorithm(path);
+            Entry owner = index.entries.get(path.substring(0, path.length() - algorithm.getExtension().length()));
+            if (owner != null) {
+                // the checksum value is read lazily, only the presence of the checksum file is recorded
+                owner.getChecksums().put(algorithm, null);
+            } else {
+                index.entries.put(path, new Entry(path, size));
+            }
+        });
+        return index;
+    }
+
+    /**
+     * @return all the indexed entries, ordered by path
+     */
+    public Stream<Entry> stream() {
+        return entries.values().stream();
+    }
+
+    public File fileOf(Entry entry) {
+        return root.resolve(entry.getPath()).toFile();
+    }
+
+    /**
+     * @return all the indexed files of the repository, checksum files are only included if they don't belong to any other file
+     */
+    @JsonIgnore
+    public List<File> getFiles() {
+        return stream().map(this::fileOf).collect(Collectors.toList());
+    }
+
+    /**
+     * @return GAVs of all the files in the repository, unique by <code>groupId:artifactId:version</code>
+     */
+    @JsonIgnore
+    public Collection<GAV> getGavs() {
+        Set<GAV> result = new TreeSet<>(Comparator.comparing(GAV::toGav));
+        stream().filter(entry -> !entry.isChecksumFile()).map(Entry::getGav).forEach(result::add);
+        return result;
+    }
+
+    /**
+     * Add a file, e.g. a downloaded artifact, to the index
+     *
+     * @param file a file in the repository directory
+     * @return the entry of the file
+     */
+    public Entry add(File file) {
+        String path = relativize(file.toPath().toAbsolutePath());
+        Entry entry = new Entry(path, file.length());
+        entries.put(path, entry);
+        return entry;
+    }
+
+    /**
+     * Remove files matching the predicate, together with their checksum files, from the repository. Directories left empty
+     * after the removal are removed too.
+     *
+     * @param condition condition for the files to remove
+     */
+    public void removeIf(Predicate<Entry> condition) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (condition.test(entry)) {
+                File file = fileOf(entry);
+                file.delete();
+                entry.getChecksums().keySet()
+                        .forEach(algorithm -> new File(file.getPath() + algorithm.getExtension()).delete());
+                removeEmptyParents(file.getParentFile());
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Get the checksum of a file of the repository, without computing it if it is already known
+     *
+     * @return the checksum from the entry, from the checksum file of the entry or, if none of them is available, computed from
+     *         the file
+     */
+    public String checksum(Entry entry, Algorithm algorithm) {
+        File file = fileOf(entry);
+        String checksum = entry.getChecksums().get(algorithm);
+        if (checksum == null && entry.getChecksums().containsKey(algorithm)) {
+            try {
+                String content = FileUtils
+                        .readFileToString(new File(file.getPath() + algorithm.getExtension()), StandardCharsets.UTF_8).trim();
+                // checksum files may contain the file name after the checksum
+                checksum = content.isEmpty() ? null : content.split("\\s+")[0];
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to read " + algorithm + " of " + file, e);
+            }
+        }
+        if (checksum == null) {
+            checksum = ChecksumUtils.checksum(file.toPath(), algorithm);
+        }
+        return checksum;
+    }
+
+    private void removeEmptyParents(File directory) {
+        File rootDirectory = root.toFile();
+        while (directory != null && !directory.equals(rootDirectory)) {
+            String[] children = directory.list();
+            if (children == null || children.length > 0 || !directory.delete()) {
+                return;
+            }
+            directory = directory.getParentFile();
+        }
+    }
+
+    private String relativize(Path file) {
+        return FilenameUtils.separatorsToUnix(root.relativize(file).toString());
+    }
+
+    private static Algorithm checksumAlgorithm(String path) {
+        for (Algorithm algorithm : Algorithm.values()) {
+            if (path.endsWith(algorithm.getExtension())) {
+                return algorithm;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A file of the repository
+     */
+    @Data
+    @NoArgsConstructor
+    public static class Entry {
+        /**
+         * path relative to the repository root, with <code>/</code> as the separator
+         */
+        private String path;
+        private long size;
+        private String classifier;
+        private String type;
+        /**
+         * checksums of the file, <code>null</code> values denote checksum files that exist but haven't been read
+         */
+        private Map<Algorithm, String> checksums = new EnumMap<>(Algorithm.class);
+
+        @JsonIgnore
+        private transient GAV gav;
+
+        Entry(String path, long size) {
+            this.path = path;
+            this.size = size;
+            type = FilenameUtils.getExtension(path);
+            classifier = parseClassifier(path, type);
+        }
+
+        @JsonIgnore
+        public String getFileName() {
+            return FilenameUtils.getName(path);
+        }
+
+        @JsonIgnore
+        public GAV getGav() {
+            if (gav == null) {
+                gav = new GAV(path);
+            }
+            return gav;
+        }
+
+        /**
+         * @return true for checksum files that don't belong to any other file in the repository
+         */
+        @JsonIgnore
+        public boolean isChecksumFile() {
+            return checksumAlgorithm(path) != null;
+        }
+
+        /**
+         * The classifier is the part of the file name between <code>artifactId-version-</code> and the extension, e.g.
+         * <code>sources</code> for <code>org/foo/bar/1.0/bar-1.0-sources.jar</code>
+         */
+        private static String parseClassifier(String path, String type) {
+            String[] segments = path.split("/");
+            if (segments.length < 4 || type.isEmpty()) {
+                return null;
+            }
+            String version = segments[segments.length - 2];
+            String artifactId = segments[segments.length - 3];
+            String prefix = artifactId + "-" + version + "-";
+            String fileName = segments[segments.length - 1];
+            if (!fileName.startsWith(prefix) || fileName.length() <= prefix.length() + type.length() + 1) {
+                return null;
+            }
+            return fileName.substring(prefix.length(), fileName.length() - type.length() - 1);
+        }
+    }
+}
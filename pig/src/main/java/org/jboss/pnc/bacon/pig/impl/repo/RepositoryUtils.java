@@ -17,13 +17,13 @@
  */
 package org.jboss.pnc.bacon.pig.impl.repo;
 
-import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
+import org.jboss.pnc.bacon.pig.impl.utils.ChecksumUtils;
+import org.jboss.pnc.bacon.pig.impl.utils.ChecksumUtils.Algorithm;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
@@ -33,9 +33,16 @@ import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.AbstractMap;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.function.Function;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -50,64 +57,85 @@ import static java.util.Comparator.comparingInt;
 public class RepositoryUtils {
     public static final Logger log = LoggerFactory.getLogger(RepositoryUtils.class);
 
+    private static final int CHECKSUM_THREADS = Integer.getInteger("pig.checksum.threads",
+            Runtime.getRuntime().availableProcessors());
+
     public static void addCheckSums(File mavenRepositoryDirectory) {
-        log.debug("Generating missing checksums");
-        try {
-            Files.walk(mavenRepositoryDirectory.toPath()).filter(p -> p.toFile().isFile())
-                    .filter(RepositoryUtils::isNotCheckSumFile).forEach(RepositoryUtils::addCheckSums);
-        } catch (IOException e) {
-            throw new RuntimeException("Unable to generate checksums for " + mavenRepositoryDirectory.getAbsolutePath(), e);
-        }
+        addCheckSums(RepositoryIndex.build(mavenRepositoryDirectory));
     }
 
-    private static boolean isNotCheckSumFile(Path path) {
-        return Stream.of(RepoDescriptor.CHECKSUM_EXTENSIONS).noneMatch(ext -> path.toString().endsWith(ext));
-    }
+    /**
+     * Generate missing checksum files for all the files in the repository. The checksums to generate are configured with the
+     * <code>pig.checksums</code> system property, see {@link ChecksumUtils#configuredAlgorithms()}.
+     * <p>
+     * Each file is read once, files are processed on <code>pig.checksum.threads</code> threads, one per core by default. The
+     * generated checksums are recorded in the index.
+     *
+     * @param index index of the repository
+     */
+    public static void addCheckSums(RepositoryIndex index) {
+        log.debug("Generating missing checksums");
+        Set<Algorithm> algorithms = ChecksumUtils.configuredAlgorithms();
 
-    protected static void addCheckSums(Path filePath) {
-        generateCheckSum(filePath, "md5sum", ".md5");
-        generateCheckSum(filePath, "sha1sum", ".sha1");
+        List<RepositoryIndex.Entry> entries = index.stream().filter(entry -> !entry.isChecksumFile())
+                // the biggest files first, not to end up waiting for a single big file at the end
+                .sorted(Comparator.comparingLong(RepositoryIndex.Entry::getSize).reversed()).collect(Collectors.toList());
+
+        ExecutorService executor = Executors.newFixedThreadPool(CHECKSUM_THREADS);
+        try {
+            List<Future<?>> results = entries.stream()
+                    .map(entry -> executor.submit(() -> addCheckSums(index.fileOf(entry), entry, algorithms)))
+                    .collect(Collectors.toList());
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while generating checksums", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Unable to generate checksums for " + index.getRoot(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
-    private static void generateCheckSum(Path filePath, String checksumType, String extension) {
-        String file = filePath.toAbsolutePath().toString();
-        File checkSumFile = new File(file + extension);
+    private static void addCheckSums(File file, RepositoryIndex.Entry entry, Set<Algorithm> algorithms) {
+        Map<Algorithm, String> checksums = entry.getChecksums();
 
-        if (checkSumFile.exists()) {
+        Set<Algorithm> missing = EnumSet.noneOf(Algorithm.class);
+        algorithms.stream().filter(algorithm -> !checksums.containsKey(algorithm)).forEach(missing::add);
+        if (missing.isEmpty()) {
             return;
         }
 
-        try {
-            String checksum;
-
-            try (FileInputStream data = new FileInputStream(file)) {
-                switch (checksumType) {
-                    case "md5sum":
-                        checksum = DigestUtils.md5Hex(data);
-                        break;
-                    case "sha1sum":
-                        checksum = DigestUtils.sha1Hex(data);
-                        break;
-                    default:
-                        throw new IOException("Unknown checksum type: " + checksumType);
-                }
+        ChecksumUtils.checksums(file.toPath(), missing).forEach((algorithm, checksum) -> {
+            File checkSumFile = new File(file.getPath() + algorithm.getExtension());
+            try {
+                FileUtils.write(checkSumFile, checksum, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to create checksum file: " + checkSumFile.getAbsolutePath(), e);
             }
-
-            FileUtils.write(checkSumFile, checksum, StandardCharsets.UTF_8);
-        } catch (IOException e) {
-            throw new RuntimeException("Unable to create checksum file: " + checkSumFile.getAbsolutePath());
-        }
+            checksums.put(algorithm, checksum);
+        });
     }
 
     public static void removeIrrelevantFiles(File element) {
+        removeIrrelevantFiles(RepositoryIndex.build(element));
+    }
+
+    public static void removeIrrelevantFiles(RepositoryIndex index) {
         log.debug("removing internal maven files from the repository");
-        removeMatchingCondition(element, file -> file.getName().equals("_remote.repositories"));
-        removeMatchingCondition(element, file -> file.getName().endsWith(".lastUpdated"));
+        index.removeIf(entry -> entry.getFileName().equals("_remote.repositories"));
+        index.removeIf(entry -> entry.getFileName().endsWith(".lastUpdated"));
     }
 
     public static void removeCommunityArtifacts(File element) {
+        removeCommunityArtifacts(RepositoryIndex.build(element));
+    }
+
+    public static void removeCommunityArtifacts(RepositoryIndex index) {
         log.debug("removing community dependencies from the repository");
-        removeMatchingCondition(element, RepositoryUtils::isCommunity);
+        index.removeIf(entry -> isCommunity(index.fileOf(entry)));
     }
 
     private static boolean isCommunity(File f) {
@@ -115,19 +143,6 @@ public class RepositoryUtils {
         return !absolutePath.contains("redhat-") && !absolutePath.contains("eap-runtime-artifacts");
     }
 
-    private static void removeMatchingCondition(File element, Function<File, Boolean> condition) {
-        if (element.isDirectory()) {
-            Stream.of(element.listFiles()).forEach(file -> removeMatchingCondition(file, condition));
-            if (element.listFiles().length == 0) {
-                element.delete();
-            }
-        } else {
-            if (condition.apply(element)) {
-                element.delete();
-            }
-        }
-    }
-
     public static void keepOnlyLatestRedHatArtifacts(File mavenRepositoryDirectory) throws IOException {
         Files.walkFileTree(mavenRepositoryDirectory.toPath(), new SimpleFileVisitor<Path>() {
             @Override
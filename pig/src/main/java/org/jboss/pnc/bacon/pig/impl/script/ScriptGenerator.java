@@ -27,6 +27,7 @@ import org.jboss.pnc.dto.ProductMilestoneRef;
 
 import java.io.File;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
@@ -37,6 +38,8 @@ import java.util.Optional;
 public class ScriptGenerator {
 
     public static final String SCRIPT_NAME = "generate-nvr-list.sh";
+    private static final String RELEASE_SCRIPT_NAME = "release.sh";
+    private static final String UPLOAD_SCRIPT_NAME = "upload-to-candidates.sh";
     private final Config config;
     private final Deliverables deliverables;
 
@@ -53,10 +56,19 @@ public class ScriptGenerator {
         generateUploadToCandidatesScript(targetDir, dataRoot);
     }
 
+    /**
+     * @param targetDir the directory the scripts are generated to
+     * @return the files {@link #generateReleaseScripts} generates
+     */
+    public List<File> getScriptFiles(Path targetDir) {
+        return Arrays.asList(targetDir.resolve(RELEASE_SCRIPT_NAME).toFile(), targetDir.resolve(UPLOAD_SCRIPT_NAME).toFile(),
+                targetDir.resolve(SCRIPT_NAME).toFile());
+    }
+
     private void generateUploadToCandidatesScript(Path targetDir, ReleaseScriptData dataRoot) {
         FileGenerator generator = new FileGenerator(Optional.empty());
 
-        File uploadScriptLocation = targetDir.resolve("upload-to-candidates.sh").toFile();
+        File uploadScriptLocation = targetDir.resolve(UPLOAD_SCRIPT_NAME).toFile();
 
         generator.generateFileFromResource(dataRoot, "uploadToCandidates.sh", uploadScriptLocation);
     }
@@ -65,7 +77,7 @@ public class ScriptGenerator {
 
         FileGenerator generator = new FileGenerator(Optional.empty());
 
-        File releaseScriptLocation = targetPath.resolve("release.sh").toFile();
+        File releaseScriptLocation = targetPath.resolve(RELEASE_SCRIPT_NAME).toFile();
 
         generator.generateFileFromResource(dataRoot, "release.sh", releaseScriptLocation);
     }
@@ -3,26 +3,41 @@ package org.jboss.pnc.bacon.pig.impl.sources;
 import com.redhat.red.build.finder.KojiBuild;
 import com.redhat.red.build.koji.model.xmlrpc.KojiArchiveInfo;
 import com.redhat.red.build.koji.model.xmlrpc.KojiBuildInfo;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.jboss.pnc.bacon.pig.impl.documents.sharedcontent.BrewSearcher;
 import org.jboss.pnc.bacon.pig.impl.documents.sharedcontent.MRRCSearcher;
+import org.jboss.pnc.bacon.pig.impl.pnc.BuildPrefetcher;
 import org.jboss.pnc.bacon.pig.impl.pnc.PncBuild;
 import org.jboss.pnc.bacon.pig.impl.repo.RepositoryData;
+import org.jboss.pnc.bacon.pig.impl.repo.RepositoryIndex;
 import org.jboss.pnc.bacon.pig.impl.utils.FileDownloadUtils;
 import org.jboss.pnc.bacon.pig.impl.utils.FileUtils;
-import org.jboss.pnc.bacon.pig.impl.utils.GAV;
+import org.jboss.pnc.bacon.pig.impl.utils.ParallelZipCreator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URI;
 import java.nio.file.FileSystems;
-import java.util.Collection;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import static org.jboss.pnc.bacon.pig.impl.utils.GerritUtils.gerritSnapshotDownloadUrl;
 
@@ -30,6 +45,7 @@ public class SourcesGenerator {
     private static final Logger log = LoggerFactory.getLogger(SourcesGenerator.class);
 
     private static final String KOJI_TOP_URL = "http://download.eng.bos.redhat.com/brewroot";
+    private static final int DOWNLOAD_THREADS = Integer.getInteger("pig.sources.downloadThreads", 4);
 
     public static final MRRCSearcher mrrcSearcher = MRRCSearcher.getInstance();
     public static final String SEPARATOR = FileSystems.getDefault().getSeparator();
@@ -40,85 +56,155 @@ public class SourcesGenerator {
 
     private final String targetZipFileName;
 
+    private final BuildPrefetcher prefetcher;
+
     public SourcesGenerator(SourcesGenerationData sourcesGenerationData, String topLevelDirectoryName,
             String targetZipFileName) {
+        this(sourcesGenerationData, topLevelDirectoryName, targetZipFileName, null);
+    }
+
+    /**
+     * @param prefetcher if not <code>null</code>, sources of the builds already downloaded by the prefetcher are used
+     */
+    public SourcesGenerator(SourcesGenerationData sourcesGenerationData, String topLevelDirectoryName, String targetZipFileName,
+            BuildPrefetcher prefetcher) {
         this.sourcesGenerationData = sourcesGenerationData;
         this.topLevelDirectoryName = topLevelDirectoryName;
         this.targetZipFileName = targetZipFileName;
+        this.prefetcher = prefetcher;
     }
 
+    /**
+     * Generate the sources zip. Sources of the builds, and of the unreleased dependencies for the extended strategy, are
+     * downloaded in parallel, at most <code>pig.sources.downloadThreads</code> (4 by default) at a time, and copied to the zip
+     * straight from the downloaded archives. Builds of the same revision of the same repository are only added once. Sources
+     * already downloaded by the prefetcher are not downloaded again.
+     */
     public void generateSources(Map<String, PncBuild> builds, RepositoryData repo) {
         File workDir = FileUtils.mkTempDir("sources");
+        File zipFile = new File(targetZipFileName);
 
-        File contentsDir = new File(workDir, topLevelDirectoryName);
-
-        contentsDir.mkdirs();
+        ExecutorService executor = Executors.newFixedThreadPool(DOWNLOAD_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "sources-download");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (ZipArchiveOutputStream output = new ZipArchiveOutputStream(zipFile);
+                ParallelZipCreator zipCreator = new ParallelZipCreator(output)) {
+            zipCreator.addEmptyEntry(new ZipArchiveEntry(topLevelDirectoryName + "/"));
 
-        downloadSourcesFromBuilds(builds, workDir, contentsDir);
+            addSourcesFromBuilds(builds, workDir, zipCreator, executor);
 
-        if (sourcesGenerationData.getStrategy() == SourcesGenerationStrategy.GENERATE_EXTENDED) {
-            addSourcesOfUnreleasedDependencies(repo, workDir, contentsDir);
+            if (sourcesGenerationData.getStrategy() == SourcesGenerationStrategy.GENERATE_EXTENDED) {
+                addSourcesOfUnreleasedDependencies(repo, workDir, zipCreator, executor);
+            }
+            zipCreator.writePending();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to generate sources zip " + zipFile.getAbsolutePath(), e);
+        } finally {
+            executor.shutdownNow();
         }
-
-        File zipFile = new File(targetZipFileName);
-
-        FileUtils.zip(zipFile, workDir, contentsDir);
     }
 
-    private void downloadSourcesFromBuilds(Map<String, PncBuild> builds, File workDir, File contentsDir) {
-        builds.values().forEach(build -> {
-            URI url = gerritSnapshotDownloadUrl(build.getScmRepository().getInternalUrl(), build.getScmRevision());
-
-            File targetPath = new File(workDir, build.getName() + ".tar.gz");
-            FileDownloadUtils.downloadTo(url, targetPath);
-            Collection<String> untaredFiles = FileUtils.untar(targetPath, contentsDir);
-            List<String> topLevelDirectories = untaredFiles.stream().filter(this::isNotANestedFile)
-                    .collect(Collectors.toList());
-
-            if (topLevelDirectories.size() != 1) {
-                throw new RuntimeException("Invalid number of top level directories untared for build " + build + ", "
-                        + "the untared archive: " + targetPath.getAbsolutePath());
+    private void addSourcesFromBuilds(Map<String, PncBuild> builds, File workDir, ParallelZipCreator zipCreator,
+            ExecutorService executor) {
+        Map<String, PncBuild> buildsBySources = new LinkedHashMap<>();
+        builds.values().stream().sorted(Comparator.comparing(PncBuild::getName)).forEach(build -> {
+            PncBuild sameSources = buildsBySources.putIfAbsent(sourcesKey(build), build);
+            if (sameSources != null) {
+                log.info("Build {} has the same sources as {}, its sources are added only once", build.getName(),
+                        sameSources.getName());
             }
+        });
 
-            String topLevelDirectoryName = untaredFiles.iterator().next();
+        List<PncBuild> uniqueBuilds = new ArrayList<>(buildsBySources.values());
+        List<Future<File>> downloads = uniqueBuilds.stream().map(build -> executor.submit(() -> {
+            File prefetched = prefetcher == null ? null : prefetcher.takeSources(build);
+            return prefetched != null ? prefetched : downloadSources(build, new File(workDir, build.getName() + ".tar.gz"));
+        })).collect(Collectors.toList());
+
+        for (int i = 0; i < uniqueBuilds.size(); i++) {
+            PncBuild build = uniqueBuilds.get(i);
+            File tarball = await(downloads.get(i));
+            // the single top level directory of the archive is renamed to the name of the build
+            String[] topLevelDirectory = new String[1];
+            FileUtils.tarToZip(tarball, zipCreator, name -> {
+                String[] segments = name.split("/", 2);
+                if (topLevelDirectory[0] == null) {
+                    topLevelDirectory[0] = segments[0];
+                } else if (!topLevelDirectory[0].equals(segments[0])) {
+                    throw new RuntimeException("Invalid number of top level directories in the sources of build " + build
+                            + ", the archive: " + tarball.getAbsolutePath());
+                }
+                return topLevelDirectoryName + "/" + build.getName() + "/" + (segments.length > 1 ? segments[1] : "");
+            });
+            tarball.delete();
+        }
+    }
 
-            File topLevelDirectory = new File(contentsDir, topLevelDirectoryName);
-            File properTopLevelDirectory = new File(contentsDir, build.getName());
-            topLevelDirectory.renameTo(properTopLevelDirectory);
-        });
+    /**
+     * @return identifier of the sources of the build, the same for builds of the same revision of the same repository
+     */
+    public static String sourcesKey(PncBuild build) {
+        return build.getScmRepository().getInternalUrl() + "#" + build.getScmRevision();
     }
 
-    private boolean isNotANestedFile(String name) {
-        // either "some-directory" or "some-directory/"
-        return !name.contains(SEPARATOR) || name.indexOf(SEPARATOR) + SEPARATOR.length() == name.length();
+    /**
+     * Download the snapshot of the sources of the build
+     *
+     * @return the downloaded tarball, <code>targetPath</code>
+     */
+    public static File downloadSources(PncBuild build, File targetPath) {
+        URI url = gerritSnapshotDownloadUrl(build.getScmRepository().getInternalUrl(), build.getScmRevision());
+        FileDownloadUtils.downloadTo(url, targetPath);
+        return targetPath;
     }
 
-    private void addSourcesOfUnreleasedDependencies(RepositoryData repo, File workDir, File contentsDir) {
-        File unreleasedWorkDir = new File(workDir, topLevelDirectoryName);
+    private void addSourcesOfUnreleasedDependencies(RepositoryData repo, File workDir, ParallelZipCreator zipCreator,
+            ExecutorService executor) {
+        File unreleasedWorkDir = new File(workDir, "unreleased");
         unreleasedWorkDir.mkdirs();
-        addUnreleasedSources(repo, unreleasedWorkDir);
-        Stream.of(unreleasedWorkDir.listFiles()).filter(f -> f.getName().endsWith("tar.gz"))
-                .forEach(f -> FileUtils.untar(f, contentsDir));
+        List<Future<File>> downloads = getUnreleasedBuilds(repo).stream()
+                .map(build -> executor.submit(() -> downloadSourcesTo(build, unreleasedWorkDir))).collect(Collectors.toList());
+
+        // sources of different builds may contain the same directories
+        Set<String> added = new HashSet<>();
+        for (Future<File> download : downloads) {
+            File tarball = await(download);
+            FileUtils.tarToZip(tarball, zipCreator, name -> {
+                String entryName = topLevelDirectoryName + "/" + name;
+                return added.add(StringUtils.removeEnd(entryName, "/")) ? entryName : null;
+            });
+            tarball.delete();
+        }
     }
 
-    private void addUnreleasedSources(RepositoryData repo, File contentsDir) {
+    private List<KojiBuild> getUnreleasedBuilds(RepositoryData repo) {
         // TODO: handle projects without the project sources tgz here
         Predicate<File> isWhitelisted = sourcesGenerationData.getWhitelistedArtifacts().isEmpty() ? f -> true
                 : f -> sourcesGenerationData.getWhitelistedArtifacts().stream().anyMatch(a -> f.getName().contains(a));
 
-        repo.getFiles().stream().filter(f -> f.getName().endsWith(".jar")).filter(SourcesGenerator::isUnreleased)
-                .filter(isWhitelisted).map(SourcesGenerator::getSingleBuild).distinct()
-                .forEach(build -> downloadSourcesTo(build, contentsDir));
+        RepositoryIndex index = repo.getIndex();
+        List<RepositoryIndex.Entry> jars = index.stream().filter(entry -> entry.getPath().endsWith(".jar"))
+                .collect(Collectors.toList());
+        Map<String, Boolean> released = mrrcSearcher
+                .areReleased(jars.stream().map(RepositoryIndex.Entry::getGav).collect(Collectors.toList()));
+        List<File> unreleased = jars.stream().filter(entry -> !Boolean.TRUE.equals(released.get(entry.getGav().toUri())))
+                .map(index::fileOf).filter(isWhitelisted).collect(Collectors.toList());
+        Map<Path, List<KojiBuild>> builds = BrewSearcher
+                .getBuilds(unreleased.stream().map(File::toPath).collect(Collectors.toList()));
+        return unreleased.stream().map(file -> getSingleBuild(file, builds)).distinct().collect(Collectors.toList());
     }
 
-    private static boolean isUnreleased(File file) {
-        final String fileAbsolutePath = file.getAbsolutePath();
-        final String lastPartOfPath = "maven-repository";
-        final String repoDirName = fileAbsolutePath.substring(0,
-                fileAbsolutePath.indexOf(lastPartOfPath) + lastPartOfPath.length() + 1);
-        GAV gav = GAV.fromFileName(fileAbsolutePath, repoDirName);
-
-        return !mrrcSearcher.isReleased(gav);
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while downloading sources", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to download sources", e.getCause());
+        }
     }
 
     protected static File downloadSourcesTo(KojiBuild build, File directory) {
@@ -166,8 +252,8 @@ public class SourcesGenerator {
         return getDownloadURL(buildInfo, archiveInfo);
     }
 
-    private static KojiBuild getSingleBuild(File file) {
-        List<KojiBuild> builds = BrewSearcher.getBuilds(file.toPath());
+    private static KojiBuild getSingleBuild(File file, Map<Path, List<KojiBuild>> buildsByFile) {
+        List<KojiBuild> builds = buildsByFile.getOrDefault(file.toPath(), Collections.emptyList());
 
         if (builds.size() != 1) {
             throw new RuntimeException(
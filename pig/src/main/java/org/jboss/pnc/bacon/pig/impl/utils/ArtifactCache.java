@@ -0,0 +1,389 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.bacon.pig.impl.utils;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.lang.System.getProperty;
+
+/**
+ * Persistent, content-addressed cache of downloaded artifacts, shared between PiG runs.
+ * <p>
+ * Entries are keyed by the strongest checksum known for an artifact and are hard-linked (or copied, if linking is not possible)
+ * to the requested location, so the requested files must be replaced rather than modified in place. The least recently used
+ * entries are removed when the cache grows over its maximum size. The last use of an entry is recorded in the modification time
+ * of an empty marker file in the <code>access</code> directory of the cache, the entries themselves, and so the files linked to
+ * them, are never modified.
+ * <p>
+ * Artifacts can be prefetched to the cache in the background, a request for an artifact that is being prefetched waits for the
+ * prefetch to finish instead of downloading the artifact again.
+ * <p>
+ * The cache is configured with the following system properties:
+ * <ul>
+ * <li><code>pig.cache.dir</code> - location of the cache, <code>~/.cache/pig/artifacts</code> by default</li>
+ * <li><code>pig.cache.maxSizeMb</code> - maximum size of the cache, 20 GB by default</li>
+ * <li><code>pig.cache.disabled</code> - set to disable the cache</li>
+ * </ul>
+ */
+public class ArtifactCache {
+    private static final Logger log = LoggerFactory.getLogger(ArtifactCache.class);
+
+    private static final String TEMP_SUFFIX = ".part";
+    private static final String ACCESS_DIR = "access";
+
+    private static final ArtifactCache instance = new ArtifactCache(
+            Paths.get(getProperty("pig.cache.dir", getProperty("user.home") + "/.cache/pig/artifacts")),
+            Long.getLong("pig.cache.maxSizeMb", 20480L) * 1024 * 1024, getProperty("pig.cache.disabled") == null);
+
+    private final Path cacheDir;
+    private final long maxSize;
+    private final boolean enabled;
+
+    private final Object sizeLock = new Object();
+    private AtomicLong currentSize;
+
+    /**
+     * prefetches in progress, by cache entry
+     */
+    private final Map<Path, CompletableFuture<Void>> prefetches = new ConcurrentHashMap<>();
+
+    public ArtifactCache(Path cacheDir, long maxSize, boolean enabled) {
+        this.cacheDir = cacheDir;
+        this.maxSize = maxSize;
+        this.enabled = enabled;
+    }
+
+    public static ArtifactCache getInstance() {
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get the file with the given checksum to <code>targetPath</code>, from the cache if possible, downloading it from
+     * <code>downloadUrl</code> otherwise. Downloaded files are verified against the checksum before they are stored in the
+     * cache. If the cache is disabled, downloaded files are still verified.
+     *
+     * @param downloadUrl url to download the file from on a cache miss
+     * @param checksum checksum of the file, if <code>null</code>, the cache is bypassed
+     * @param targetPath target file
+     */
+    public void downloadTo(URI downloadUrl, Checksum checksum, File targetPath) {
+        if (!enabled || checksum == null) {
+            FileDownloadUtils.downloadTo(downloadUrl, targetPath);
+            if (checksum != null) {
+                verify(checksum, targetPath, downloadUrl);
+            }
+            return;
+        }
+
+        Path entry = entryPath(checksum);
+        awaitPrefetch(entry);
+        if (Files.exists(entry)) {
+            log.debug("Using cached {} for {}", entry, downloadUrl);
+            markUsed(entry);
+            linkOrCopy(entry, targetPath.toPath());
+            return;
+        }
+
+        FileDownloadUtils.downloadTo(downloadUrl, targetPath);
+        verify(checksum, targetPath, downloadUrl);
+        store(targetPath.toPath(), entry, false);
+    }
+
+    /**
+     * Download the file with the given checksum to the cache in the background, unless it is already cached. Failures are only
+     * logged, the file is then downloaded again when it's requested.
+     *
+     * @param downloadUrl url to download the file from
+     * @param checksum checksum of the file, if <code>null</code> or the cache is disabled, nothing is prefetched
+     * @param executor executor to download the file with
+     */
+    public void prefetch(URI downloadUrl, Checksum checksum, Executor executor) {
+        if (!enabled || checksum == null) {
+            return;
+        }
+        Path entry = entryPath(checksum);
+        CompletableFuture<Void> prefetch = new CompletableFuture<>();
+        if (Files.exists(entry) || prefetches.putIfAbsent(entry, prefetch) != null) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                fetch(downloadUrl, checksum, entry);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to prefetch {}: {}", downloadUrl, e.getMessage());
+            } finally {
+                prefetches.remove(entry);
+                prefetch.complete(null);
+            }
+        });
+    }
+
+    private void fetch(URI downloadUrl, Checksum checksum, Path entry) throws IOException {
+        if (Files.exists(entry)) {
+            return;
+        }
+        Files.createDirectories(entry.getParent());
+        Path temp = Files.createTempFile(entry.getParent(), entry.getFileName().toString(), TEMP_SUFFIX);
+        try {
+            FileDownloadUtils.downloadTo(downloadUrl, temp.toFile());
+            verify(checksum, temp.toFile(), downloadUrl);
+            store(temp, entry, true);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void awaitPrefetch(Path entry) {
+        CompletableFuture<Void> prefetch = prefetches.get(entry);
+        if (prefetch != null) {
+            try {
+                prefetch.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for prefetch of " + entry, e);
+            } catch (ExecutionException e) {
+                log.debug("Prefetch of {} failed", entry, e);
+            }
+        }
+    }
+
+    private Path entryPath(Checksum checksum) {
+        String value = checksum.getValue();
+        return cacheDir.resolve(checksum.getAlgorithm()).resolve(value.substring(0, 2)).resolve(value);
+    }
+
+    private void verify(Checksum checksum, File file, URI downloadUrl) {
+        String actual = checksum.compute(file);
+        if (!actual.equals(checksum.getValue())) {
+            throw new RuntimeException("Checksum mismatch for " + downloadUrl + ", expected " + checksum.getAlgorithm() + " "
+                    + checksum.getValue() + ", got " + actual);
+        }
+    }
+
+    /**
+     * @param move if true, <code>file</code> is a temporary file that can be moved to the cache instead of copied
+     */
+    private void store(Path file, Path entry, boolean move) {
+        try {
+            Files.createDirectories(entry.getParent());
+            if (Files.exists(entry)) {
+                return;
+            }
+            Path temp = Files.createTempFile(entry.getParent(), entry.getFileName().toString(), TEMP_SUFFIX);
+            try {
+                if (move) {
+                    Files.move(file, temp, StandardCopyOption.REPLACE_EXISTING);
+                } else {
+                    Files.copy(file, temp, StandardCopyOption.REPLACE_EXISTING);
+                }
+                // unlike a move, linking never replaces an entry stored concurrently, e.g. by another PiG run
+                publish(temp, entry);
+            } catch (FileAlreadyExistsException alreadyStored) {
+                return;
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            markUsed(entry);
+            size().addAndGet(Files.size(entry));
+        } catch (IOException e) {
+            log.warn("Failed to store {} in the artifact cache", file, e);
+            return;
+        }
+        evictIfNeeded();
+    }
+
+    private static void publish(Path temp, Path entry) throws IOException {
+        try {
+            Files.createLink(entry, temp);
+        } catch (FileAlreadyExistsException alreadyStored) {
+            throw alreadyStored;
+        } catch (IOException | UnsupportedOperationException linkingFailed) {
+            log.debug("Unable to hard link {}, moving it", temp, linkingFailed);
+            Files.move(temp, entry);
+        }
+    }
+
+    private void linkOrCopy(Path entry, Path target) {
+        try {
+            Files.createDirectories(target.toAbsolutePath().getParent());
+            Files.deleteIfExists(target);
+            // entries stored by previous versions are read-only, the linked files must not be
+            entry.toFile().setWritable(true);
+            try {
+                Files.createLink(target, entry);
+            } catch (IOException | UnsupportedOperationException linkingFailed) {
+                log.debug("Unable to hard link {}, copying it", entry, linkingFailed);
+                Files.copy(entry, target);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to copy " + entry + " from the artifact cache to " + target, e);
+        }
+    }
+
+    private void markUsed(Path entry) {
+        Path marker = accessMarker(entry.toFile());
+        try {
+            if (Files.exists(marker)) {
+                Files.setLastModifiedTime(marker, FileTime.fromMillis(System.currentTimeMillis()));
+            } else {
+                Files.createDirectories(marker.getParent());
+                Files.newOutputStream(marker).close();
+            }
+        } catch (IOException e) {
+            log.debug("Failed to record the use of {}", entry, e);
+        }
+    }
+
+    private Path accessMarker(File entry) {
+        return cacheDir.resolve(ACCESS_DIR).resolve(cacheDir.relativize(entry.toPath()));
+    }
+
+    /**
+     * @return time of the last use of the entry, or of its storing if it was stored by a previous version
+     */
+    private long lastUsed(File entry) {
+        File marker = accessMarker(entry).toFile();
+        return marker.exists() ? marker.lastModified() : entry.lastModified();
+    }
+
+    private AtomicLong size() {
+        synchronized (sizeLock) {
+            if (currentSize == null) {
+                currentSize = new AtomicLong(listEntries().stream().mapToLong(File::length).sum());
+            }
+            return currentSize;
+        }
+    }
+
+    private void evictIfNeeded() {
+        if (size().get() <= maxSize) {
+            return;
+        }
+        synchronized (sizeLock) {
+            List<File> entries = listEntries();
+            Map<File, Long> lastUsed = entries.stream().collect(Collectors.toMap(entry -> entry, this::lastUsed));
+            entries.sort(Comparator.comparingLong(lastUsed::get));
+            long size = entries.stream().mapToLong(File::length).sum();
+            for (File entry : entries) {
+                if (size <= maxSize) {
+                    break;
+                }
+                long length = entry.length();
+                if (entry.delete()) {
+                    accessMarker(entry).toFile().delete();
+                    log.debug("Evicted {} from the artifact cache", entry);
+                    size -= length;
+                }
+            }
+            currentSize.set(size);
+        }
+    }
+
+    private List<File> listEntries() {
+        if (!Files.exists(cacheDir)) {
+            return new ArrayList<>();
+        }
+        Path accessDir = cacheDir.resolve(ACCESS_DIR);
+        try (Stream<Path> files = Files.walk(cacheDir)) {
+            return files.filter(p -> !p.startsWith(accessDir)).filter(Files::isRegularFile)
+                    .filter(p -> !p.getFileName().toString().endsWith(TEMP_SUFFIX)).map(Path::toFile)
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to list the contents of the artifact cache in " + cacheDir, e);
+        }
+    }
+
+    /**
+     * Checksum of a cached file
+     */
+    @Getter
+    @EqualsAndHashCode
+    public static class Checksum {
+        public static final String SHA256 = "sha256";
+        public static final String SHA1 = "sha1";
+        public static final String MD5 = "md5";
+
+        private final String algorithm;
+        private final String value;
+
+        private Checksum(String algorithm, String value) {
+            this.algorithm = algorithm;
+            this.value = value.trim().toLowerCase(Locale.ENGLISH);
+        }
+
+        /**
+         * Select the strongest of the given checksums
+         *
+         * @return the checksum or <code>null</code> if none of the checksums is known
+         */
+        public static Checksum strongest(String sha256, String sha1, String md5) {
+            if (isPresent(sha256)) {
+                return new Checksum(SHA256, sha256);
+            }
+            if (isPresent(sha1)) {
+                return new Checksum(SHA1, sha1);
+            }
+            if (isPresent(md5)) {
+                return new Checksum(MD5, md5);
+            }
+            return null;
+        }
+
+        private static boolean isPresent(String checksum) {
+            return checksum != null && checksum.trim().length() > 2;
+        }
+
+        String compute(File file) {
+            return ChecksumUtils.checksum(file.toPath(), ChecksumUtils.Algorithm.fromName(algorithm));
+        }
+
+        @Override
+        public String toString() {
+            return algorithm + ":" + value;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.bacon.pig.impl.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downloads a batch of files concurrently.
+ * <p>
+ * The number of workers can be customized with the <code>pig.download.threads</code> system property. The number of concurrent
+ * connections to a single host is limited by the shared connection pool of
+ * {@link org.jboss.pnc.bacon.common.http.HttpTransport}. Failures do not stop the batch, they are collected and reported
+ * together by {@link #await()}. Targets of failed downloads are deleted.
+ */
+public class BatchDownloader {
+    private static final Logger log = LoggerFactory.getLogger(BatchDownloader.class);
+
+    public static final int DEFAULT_THREADS = Integer.getInteger("pig.download.threads", 10);
+
+    private final ExecutorService executor;
+
+    private final Set<String> targets = ConcurrentHashMap.newKeySet();
+    private final Queue<Future<?>> downloads = new ConcurrentLinkedQueue<>();
+    private final Queue<String> failures = new ConcurrentLinkedQueue<>();
+    private final Set<File> failedTargets = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger submitted = new AtomicInteger();
+
+    public BatchDownloader() {
+        this(DEFAULT_THREADS);
+    }
+
+    public BatchDownloader(int threads) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "batch-download-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Schedule download of <code>url</code> to <code>target</code>
+     *
+     * @param url file to download
+     * @param target target file
+     */
+    public void download(URI url, File target) {
+        submit(url, target, () -> FileDownloadUtils.downloadTo(url, target));
+    }
+
+    /**
+     * Schedule a custom download action. The action is only executed if no other download to the same target has been scheduled
+     * before.
+     *
+     * @param url url of the downloaded file, used for reporting
+     * @param target target file
+     * @param download the action that performs the download
+     */
+    public void submit(URI url, File target, Runnable download) {
+        if (!targets.add(target.getAbsolutePath())) {
+            log.debug("{} is already scheduled for download, skipping {}", target, url);
+            return;
+        }
+        submitted.incrementAndGet();
+        downloads.add(executor.submit(() -> {
+            try {
+                download.run();
+            } catch (RuntimeException e) {
+                log.warn("Failed to download {}", url, e);
+                failures.add(url + " -> " + target + ": " + e.getMessage());
+                // do not leave a partially written file behind
+                if (target.exists() && !target.delete()) {
+                    log.warn("Failed to delete {} after its download failed", target);
+                }
+                failedTargets.add(target);
+            }
+        }));
+    }
+
+    /**
+     * @return targets of the downloads that failed, the targets are deleted
+     */
+    public Set<File> getFailedTargets() {
+        return Collections.unmodifiableSet(failedTargets);
+    }
+
+    /**
+     * Wait for all the scheduled downloads to finish and release the worker threads.
+     *
+     * @throws RuntimeException listing all the failed downloads if any of the downloads failed
+     */
+    public void await() {
+        try {
+            Future<?> download;
+            while ((download = downloads.poll()) != null) {
+                download.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for downloads to finish", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Unexpected failure of a download worker", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (!failures.isEmpty()) {
+            throw new RuntimeException("Failed to download " + failures.size() + " out of " + submitted.get() + " files:\n"
+                    + String.join("\n", failures));
+        }
+        log.info("Downloaded {} files", submitted.get());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.bacon.pig.impl.utils;
+
+import org.apache.commons.codec.binary.Hex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Computes multiple checksums of a file in a single read.
+ * <p>
+ * Files are read through a per-thread direct buffer and every chunk read is fed to all the requested digests.
+ */
+public class ChecksumUtils {
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> buffers = ThreadLocal
+            .withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    public enum Algorithm {
+        MD5("MD5", ".md5"), SHA1("SHA-1", ".sha1"), SHA256("SHA-256", ".sha256"), SHA512("SHA-512", ".sha512");
+
+        private final String digestName;
+        private final String extension;
+
+        Algorithm(String digestName, String extension) {
+            this.digestName = digestName;
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        private MessageDigest newDigest() {
+            try {
+                return MessageDigest.getInstance(digestName);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("Checksum algorithm " + digestName + " is not available", e);
+            }
+        }
+
+        public static Algorithm fromName(String name) {
+            return valueOf(name.trim().replace("-", "").toUpperCase(Locale.ENGLISH));
+        }
+    }
+
+    /**
+     * Checksums to generate for the repository, configured with the comma-separated <code>pig.checksums</code> system property,
+     * e.g. <code>md5,sha1,sha256</code>. Defaults to md5 and sha1.
+     *
+     * @return the configured checksum algorithms
+     */
+    public static Set<Algorithm> configuredAlgorithms() {
+        String configured = System.getProperty("pig.checksums");
+        if (configured == null || configured.trim().isEmpty()) {
+            return EnumSet.of(Algorithm.MD5, Algorithm.SHA1);
+        }
+        Set<Algorithm> result = EnumSet.noneOf(Algorithm.class);
+        for (String name : configured.split(",")) {
+            result.add(Algorithm.fromName(name));
+        }
+        return result;
+    }
+
+    /**
+     * Compute the given checksums of a file, reading the file once
+     *
+     * @param file file to compute checksums for
+     * @param algorithms checksum algorithms
+     * @return hex-encoded checksums by algorithm
+     */
+    public static Map<Algorithm, String> checksums(Path file, Collection<Algorithm> algorithms) {
+        Map<Algorithm, MessageDigest> digests = new EnumMap<>(Algorithm.class);
+        algorithms.forEach(algorithm -> digests.put(algorithm, algorithm.newDigest()));
+
+        ByteBuffer buffer = buffers.get();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer.clear();
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                for (MessageDigest digest : digests.values()) {
+                    buffer.mark();
+                    digest.update(buffer);
+                    buffer.reset();
+                }
+                buffer.clear();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to compute checksums of " + file.toAbsolutePath(), e);
+        }
+
+        Map<Algorithm, String> result = new EnumMap<>(Algorithm.class);
+        digests.forEach((algorithm, digest) -> result.put(algorithm, Hex.encodeHexString(digest.digest())));
+        return result;
+    }
+
+    public static String checksum(Path file, Algorithm algorithm) {
+        return checksums(file, EnumSet.of(algorithm)).get(algorithm);
+    }
+
+    private ChecksumUtils() {
+    }
+}
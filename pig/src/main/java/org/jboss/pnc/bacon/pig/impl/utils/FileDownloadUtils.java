@@ -17,29 +17,17 @@
  */
 package org.jboss.pnc.bacon.pig.impl.utils;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpRequestRetryHandler;
-import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.conn.ssl.NoopHostnameVerifier;
-import org.apache.http.conn.ssl.TrustAllStrategy;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.protocol.HttpContext;
-import org.apache.http.ssl.SSLContextBuilder;
+import org.apache.http.util.EntityUtils;
+import org.jboss.pnc.bacon.common.http.HttpTransport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
-import java.security.KeyManagementException;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
-import java.util.function.Supplier;
+import java.nio.charset.StandardCharsets;
 
 /**
  * @author Michal Szynkiewicz, michal.l.szynkiewicz@gmail.com <br>
@@ -51,54 +39,21 @@ public class FileDownloadUtils {
 
     private static final Logger log = LoggerFactory.getLogger(FileDownloadUtils.class);
 
-    private static final int CONNECTION_TIMEOUT = 300000;
-
-    private static final int READ_TIMEOUT = 900000;
-
-    private static final int MAX_RETRIES = 5;
-
-    private static final RequestConfig requestConfig;
-
-    private static final Supplier<CloseableHttpClient> safeHttpClient;
-    private static final Supplier<CloseableHttpClient> unsafeHttpClient;
-
-    static {
-        requestConfig = RequestConfig.copy(RequestConfig.DEFAULT).setConnectTimeout(CONNECTION_TIMEOUT)
-                .setSocketTimeout(READ_TIMEOUT).build();
-        safeHttpClient = () -> HttpClients.custom().setDefaultRequestConfig(requestConfig).build();
-        unsafeHttpClient = () -> {
-            try {
-                return HttpClients.custom().setRetryHandler(new HttpRequestRetryHandler() {
-                    @Override
-                    public boolean retryRequest(IOException exception, int executionCount, HttpContext context) {
-                        if (executionCount > MAX_RETRIES) {
-                            log.warn("Maximum tries reached for client http pool");
-                            return false;
-                        }
-                        if (exception instanceof org.apache.http.NoHttpResponseException) {
-                            log.warn("No response from server on {} call ", executionCount);
-                            return true;
-                        }
-                        return false;
-                    }
-                }).setDefaultRequestConfig(requestConfig)
-                        .setSSLContext(new SSLContextBuilder().loadTrustMaterial(null, TrustAllStrategy.INSTANCE).build())
-                        .setSSLHostnameVerifier(NoopHostnameVerifier.INSTANCE).build();
-            } catch (NoSuchAlgorithmException | KeyManagementException | KeyStoreException e) {
-                throw new RuntimeException("Failed to initialize unsafe http client for file downloads", e);
-            }
-        };
-    }
-
+    /**
+     * Download the file, resuming interrupted transfers and splitting big files into parts downloaded in parallel, see
+     * {@link ResumableDownload}
+     */
     public static void downloadTo(URI downloadUrl, File targetPath) {
         log.info("Downloading {} to {}", downloadUrl, targetPath);
 
+        ResumableDownload download = new ResumableDownload(downloadUrl, targetPath);
         try {
-            downloadWithClient(safeHttpClient, downloadUrl, targetPath);
+            download.run(HttpTransport.client());
         } catch (Exception e) {
             log.warn("Failed to download " + downloadUrl + ". Will reattempt without SSL certificate check");
             try {
-                downloadWithClient(unsafeHttpClient, downloadUrl, targetPath);
+                // continues from where the previous attempt stopped, if possible
+                download.run(HttpTransport.insecureClient());
             } catch (Exception any) {
                 throw new RuntimeException("failed to download " + downloadUrl + " to " + targetPath.getAbsolutePath(), any);
             }
@@ -107,18 +62,29 @@ public class FileDownloadUtils {
         log.info("Downloaded {} to {}", downloadUrl, targetPath);
     }
 
-    private static void downloadWithClient(Supplier<CloseableHttpClient> httpClientSupplier, URI downloadUrl, File targetPath)
-            throws Exception {
-        try (CloseableHttpClient httpClient = httpClientSupplier.get()) {
-            HttpResponse response = httpClient.execute(new HttpGet(downloadUrl));
+    /**
+     * Download a small text file, e.g. a checksum, to a string
+     *
+     * @param downloadUrl url of the file
+     * @return content of the file or <code>null</code> if it could not be downloaded
+     */
+    public static String downloadToString(URI downloadUrl) {
+        HttpResponse response = null;
+        try {
+            response = HttpTransport.client().execute(new HttpGet(downloadUrl));
 
             int statusCode = response.getStatusLine().getStatusCode();
             if (statusCode < 200 || statusCode > 299) {
-                throw new Exception("Invalid status code for download");
+                log.debug("Unable to download {}, status code: {}", downloadUrl, statusCode);
+                return null;
             }
-            try (InputStream input = response.getEntity().getContent();
-                    FileOutputStream output = new FileOutputStream(targetPath)) {
-                IOUtils.copy(input, output);
+            return EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            log.debug("Unable to download {}", downloadUrl, e);
+            return null;
+        } finally {
+            if (response != null) {
+                EntityUtils.consumeQuietly(response.getEntity());
             }
         }
     }
@@ -23,7 +23,9 @@ import org.apache.commons.compress.archivers.ArchiveInputStream;
 import org.apache.commons.compress.archivers.ArchiveOutputStream;
 import org.apache.commons.compress.archivers.ArchiveStreamFactory;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.zip.UnixStat;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.commons.compress.archivers.zip.ZipEncoding;
 import org.apache.commons.compress.archivers.zip.ZipEncodingHelper;
 import org.apache.commons.compress.compressors.CompressorException;
@@ -32,6 +34,7 @@ import org.apache.commons.compress.compressors.bzip2.BZip2Utils;
 import org.apache.commons.compress.compressors.gzip.GzipUtils;
 import org.apache.commons.compress.compressors.lzma.LZMAUtils;
 import org.apache.commons.compress.compressors.xz.XZUtils;
+import org.apache.commons.compress.parallel.InputStreamSupplier;
 import org.apache.commons.compress.utils.IOUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.tools.ant.util.PermissionUtils;
@@ -45,6 +48,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
@@ -52,6 +56,7 @@ import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.PosixFilePermission;
@@ -60,6 +65,7 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 import static java.nio.file.Files.createTempDirectory;
@@ -74,6 +80,8 @@ public class FileUtils {
 
     private static final Logger log = LoggerFactory.getLogger(FileUtils.class);
 
+    private static final long IN_MEMORY_ENTRY_SIZE = 4 * 1024 * 1024;
+
     public static File mkTempDir(String prefix) {
         try {
             File temporaryDirectory;
@@ -183,6 +191,88 @@ public class FileUtils {
         return entries;
     }
 
+    /**
+     * Copy the content of a tar archive, possibly compressed, to a zip without extracting it to the disk. The entries are
+     * compressed in parallel, see {@link ParallelZipCreator}.
+     *
+     * @param input the tar archive
+     * @param zipCreator creator of the zip to add the entries to
+     * @param entryNames maps names of the tar entries to names of the zip entries, returns <code>null</code> for entries that
+     *        should be skipped
+     * @return names of the added zip entries
+     */
+    public static List<String> tarToZip(final File input, final ParallelZipCreator zipCreator,
+            final Function<String, String> entryNames) {
+        log.debug("tar -xf {} | zip", input);
+
+        final String compressorType = getCompressorType(input);
+
+        final List<String> entries = new ArrayList<>();
+
+        try (final InputStream is = new BufferedInputStream(Files.newInputStream(input.toPath()));
+                final InputStream cin = compressorType != null
+                        ? new CompressorStreamFactory().createCompressorInputStream(compressorType, is)
+                        : is;
+                final ArchiveInputStream in = new ArchiveStreamFactory().createArchiveInputStream(ArchiveStreamFactory.TAR,
+                        cin)) {
+            TarArchiveEntry tarEntry;
+
+            while ((tarEntry = (TarArchiveEntry) in.getNextEntry()) != null) {
+                String entryName = entryNames.apply(tarEntry.getName());
+                if (entryName == null) {
+                    continue;
+                }
+                final int permissions = tarEntry.getMode() & 07777;
+
+                final ZipArchiveEntry entry;
+                if (tarEntry.isDirectory()) {
+                    entry = new ZipArchiveEntry(entryName.endsWith("/") ? entryName : entryName + "/");
+                    entry.setUnixMode(UnixStat.DIR_FLAG | permissions);
+                    entry.setTime(tarEntry.getModTime().getTime());
+                    zipCreator.addEmptyEntry(entry);
+                } else if (tarEntry.isSymbolicLink()) {
+                    entry = new ZipArchiveEntry(entryName);
+                    entry.setUnixMode(UnixStat.LINK_FLAG | permissions);
+                    entry.setTime(tarEntry.getModTime().getTime());
+                    final byte[] bytes = tarEntry.getLinkName().getBytes(StandardCharsets.UTF_8);
+                    zipCreator.addEntry(entry, bytes.length, () -> new ByteArrayInputStream(bytes));
+                } else if (tarEntry.isFile()) {
+                    entry = new ZipArchiveEntry(entryName);
+                    entry.setUnixMode(UnixStat.FILE_FLAG | permissions);
+                    entry.setTime(tarEntry.getModTime().getTime());
+                    zipCreator.addEntry(entry, tarEntry.getSize(), buffer(in, tarEntry.getSize()));
+                } else {
+                    throw new RuntimeException("Unsupported file type for: " + tarEntry.getName() + " in " + input);
+                }
+                log.debug("tarToZip: {}", entry.getName());
+                entries.add(entry.getName());
+            }
+        } catch (IOException | ArchiveException | CompressorException e) {
+            throw new RuntimeException("Copying " + input + " to zip failed", e);
+        }
+
+        return entries;
+    }
+
+    /**
+     * Read the current entry of the archive, the content is compressed later on another thread
+     */
+    private static InputStreamSupplier buffer(InputStream in, long size) throws IOException {
+        if (size <= IN_MEMORY_ENTRY_SIZE) {
+            final byte[] content = IOUtils.toByteArray(in);
+            return () -> new ByteArrayInputStream(content);
+        }
+        final Path content = Files.createTempFile("tar-entry", ".tmp");
+        Files.copy(in, content, StandardCopyOption.REPLACE_EXISTING);
+        return () -> {
+            try {
+                return Files.newInputStream(content, StandardOpenOption.DELETE_ON_CLOSE);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to read " + content, e);
+            }
+        };
+    }
+
     public static Collection<String> tar(final File output, final File workingDirectory, final File directoryToTar) {
         final Path directory = directoryToTar.toPath();
 
@@ -332,16 +422,27 @@ public class FileUtils {
         return entries;
     }
 
+    /**
+     * Zip the directory, compressing the entries in parallel, see {@link ParallelZipCreator}
+     */
     public static Collection<String> zip(final File output, final File workingDirectory, final File directoryToZip) {
+        return zip(output, workingDirectory, directoryToZip, null);
+    }
+
+    /**
+     * Zip the directory, compressing the entries in parallel. Files that the <code>rawEntries</code> source has are copied from
+     * it without being compressed again.
+     */
+    public static Collection<String> zip(final File output, final File workingDirectory, final File directoryToZip,
+            final ParallelZipCreator.RawEntrySource rawEntries) {
         final Path directory = directoryToZip.toPath();
 
         log.debug("zip -r {} {}", output, directory);
 
         List<String> entries = new ArrayList<>();
 
-        try (final OutputStream out = Files.newOutputStream(output.toPath());
-                final ArchiveOutputStream os = new ArchiveStreamFactory().createArchiveOutputStream(ArchiveStreamFactory.ZIP,
-                        out)) {
+        try (final ZipArchiveOutputStream os = new ZipArchiveOutputStream(output);
+                final ParallelZipCreator zipCreator = new ParallelZipCreator(os)) {
             try (Stream<Path> stream = Files.walk(directory)) {
                 Iterator<Path> iterator = stream.iterator();
 
@@ -371,27 +472,30 @@ public class FileUtils {
                                 Files.getFileStore(path).type());
                     }
 
-                    os.putArchiveEntry(entry);
-
-                    final InputStream content;
-
                     if (Files.isSymbolicLink(path)) {
                         final Path symlinkDestination = Files.readSymbolicLink(path);
                         final byte[] bytes = symlinkDestination.toString().getBytes(StandardCharsets.UTF_8);
-                        content = new ByteArrayInputStream(bytes);
-                        IOUtils.copy(content, os);
-                        content.close();
+                        zipCreator.addEntry(entry, bytes.length, () -> new ByteArrayInputStream(bytes));
                     } else if (Files.isRegularFile(path)) {
-                        content = Files.newInputStream(path);
-                        IOUtils.copy(content, os);
-                        content.close();
-                    } else if (!Files.isDirectory(path)) {
+                        if (rawEntries != null && rawEntries.addRawEntry(entryName, zipCreator)) {
+                            continue;
+                        }
+                        zipCreator.addEntry(entry, Files.size(path), () -> {
+                            try {
+                                return Files.newInputStream(path);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException("Unable to read " + path, e);
+                            }
+                        });
+                    } else if (Files.isDirectory(path)) {
+                        zipCreator.addEmptyEntry(entry);
+                    } else {
                         throw new RuntimeException("Unsupported file type for: " + path);
                     }
-                    os.closeArchiveEntry();
                 }
             }
-        } catch (IOException | ArchiveException e) {
+            zipCreator.writePending();
+        } catch (IOException | UncheckedIOException e) {
             throw new RuntimeException("Zip of directory " + directory + " to " + output + " failed", e);
         }
 
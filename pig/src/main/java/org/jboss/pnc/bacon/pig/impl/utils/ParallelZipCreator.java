@@ -0,0 +1,268 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.bacon.pig.impl.utils;
+
+import org.apache.commons.compress.archivers.zip.ScatterZipOutputStream;
+import org.apache.commons.compress.archivers.zip.StreamCompressor;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntryRequest;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.parallel.FileBasedScatterGatherBackingStore;
+import org.apache.commons.compress.parallel.InputStreamSupplier;
+import org.apache.commons.compress.parallel.ScatterGatherBackingStore;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Creates zip archives, compressing entries on multiple threads.
+ * <p>
+ * Each entry is compressed into its own scatter stream on a worker thread, the compressed entries are then copied to the
+ * archive in the order in which they were added, so the resulting archive does not depend on the timing of the workers. At most
+ * a few entries per worker are kept waiting to be written. Content that is already compressed, e.g. jars, is stored instead of
+ * being deflated again. Entries already compressed in another archive can be copied without recompressing them, see
+ * {@link #addRawEntry(ZipArchiveEntry, InputStreamSupplier)}.
+ * <p>
+ * The number of workers can be set with the <code>pig.zip.threads</code> system property, one per core by default.
+ */
+public class ParallelZipCreator implements Closeable {
+    private static final int THREADS = Integer.getInteger("pig.zip.threads", Runtime.getRuntime().availableProcessors());
+    private static final int MAX_PENDING_ENTRIES_PER_THREAD = 4;
+    private static final long MAX_IN_MEMORY_ENTRY_SIZE = 4 * 1024 * 1024;
+
+    private static final Set<String> COMPRESSED_EXTENSIONS = new HashSet<>(
+            Arrays.asList("jar", "war", "ear", "rar", "zip", "gz", "tgz", "bz2", "xz", "7z", "png", "jpg", "jpeg", "gif"));
+
+    private final ZipArchiveOutputStream output;
+    private final ExecutorService executor;
+    private final int maxPendingEntries;
+    private final Deque<Future<CompressedEntry>> pending = new ArrayDeque<>();
+
+    public ParallelZipCreator(ZipArchiveOutputStream output) {
+        this(output, THREADS);
+    }
+
+    public ParallelZipCreator(ZipArchiveOutputStream output, int threads) {
+        this.output = output;
+        this.maxPendingEntries = threads * MAX_PENDING_ENTRIES_PER_THREAD;
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "zip-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Should content of the file be stored without compression
+     *
+     * @param fileName name of the file
+     * @return true if the file is already compressed
+     */
+    public static boolean isCompressed(String fileName) {
+        return COMPRESSED_EXTENSIONS.contains(FilenameUtils.getExtension(fileName).toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Schedule compression of an entry. If the entry's method is not set, it is stored for already compressed content and
+     * deflated otherwise.
+     *
+     * @param entry archive entry
+     * @param size size of the entry's content, used to decide whether to compress it in memory or in a temporary file
+     * @param content supplier of the entry's content
+     */
+    public void addEntry(ZipArchiveEntry entry, long size, InputStreamSupplier content) throws IOException {
+        if (entry.getMethod() == -1) {
+            entry.setMethod(isCompressed(entry.getName()) ? ZipEntry.STORED : ZipEntry.DEFLATED);
+        }
+        if (pending.size() >= maxPendingEntries) {
+            writeOldest();
+        }
+        pending.add(executor.submit(() -> compress(entry, size, content)));
+    }
+
+    /**
+     * Schedule copying of an already compressed entry, e.g. from another archive, without recompressing it. The entry has to
+     * have the compression method, crc, size and compressed size set.
+     *
+     * @param entry archive entry
+     * @param rawContent supplier of the compressed content of the entry
+     */
+    public void addRawEntry(ZipArchiveEntry entry, InputStreamSupplier rawContent) throws IOException {
+        if (pending.size() >= maxPendingEntries) {
+            writeOldest();
+        }
+        pending.add(CompletableFuture.completedFuture(new CompressedEntry() {
+            @Override
+            public void writeTo(ZipArchiveOutputStream target) throws IOException {
+                try (InputStream raw = rawContent.get()) {
+                    target.addRawArchiveEntry(entry, raw);
+                }
+            }
+
+            @Override
+            public void close() {
+            }
+        }));
+    }
+
+    /**
+     * Schedule an entry without content, e.g. a directory. Like all the entries, it is written after the previously added ones,
+     * without waiting for them to be compressed.
+     *
+     * @param entry archive entry
+     */
+    public void addEmptyEntry(ZipArchiveEntry entry) throws IOException {
+        if (pending.size() >= maxPendingEntries) {
+            writeOldest();
+        }
+        pending.add(CompletableFuture.completedFuture(new CompressedEntry() {
+            @Override
+            public void writeTo(ZipArchiveOutputStream target) throws IOException {
+                target.putArchiveEntry(entry);
+                target.closeArchiveEntry();
+            }
+
+            @Override
+            public void close() {
+            }
+        }));
+    }
+
+    /**
+     * Write all the scheduled entries to the archive
+     */
+    public void writePending() throws IOException {
+        while (!pending.isEmpty()) {
+            writeOldest();
+        }
+    }
+
+    private CompressedEntry compress(ZipArchiveEntry entry, long size, InputStreamSupplier content) throws IOException {
+        ScatterGatherBackingStore store = size > MAX_IN_MEMORY_ENTRY_SIZE
+                ? new FileBasedScatterGatherBackingStore(File.createTempFile("parallel-zip", ".tmp"))
+                : new InMemoryBackingStore((int) size);
+        ScatterZipOutputStream scatter = new ScatterZipOutputStream(store,
+                StreamCompressor.create(Deflater.DEFAULT_COMPRESSION, store));
+        try {
+            scatter.addArchiveEntry(ZipArchiveEntryRequest.createZipArchiveEntryRequest(entry, content));
+        } catch (IOException | RuntimeException e) {
+            scatter.close();
+            throw e;
+        }
+        return new CompressedEntry() {
+            @Override
+            public void writeTo(ZipArchiveOutputStream target) throws IOException {
+                scatter.writeTo(target);
+            }
+
+            @Override
+            public void close() throws IOException {
+                scatter.close();
+            }
+        };
+    }
+
+    private void writeOldest() throws IOException {
+        try (CompressedEntry entry = pending.poll().get()) {
+            entry.writeTo(output);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing zip entries", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to compress zip entry", e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Future<CompressedEntry> entry : pending) {
+            if (!entry.cancel(true)) {
+                // already compressed, release its backing store
+                try {
+                    entry.get().close();
+                } catch (Exception ignored) {
+                }
+            }
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Source of entries that can be copied to the archive without recompressing them
+     */
+    public interface RawEntrySource {
+        /**
+         * Add the entry to the archive as a raw entry, if the source has it
+         *
+         * @param name name of the entry in the archive
+         * @param zipCreator the archive creator
+         * @return true if the entry was added, false if it has to be compressed from its original content
+         */
+        boolean addRawEntry(String name, ParallelZipCreator zipCreator) throws IOException;
+    }
+
+    private interface CompressedEntry extends Closeable {
+        void writeTo(ZipArchiveOutputStream target) throws IOException;
+    }
+
+    private static class InMemoryBackingStore implements ScatterGatherBackingStore {
+        private final ByteArrayOutputStream content;
+
+        private InMemoryBackingStore(int expectedSize) {
+            content = new ByteArrayOutputStream(Math.max(expectedSize, 32));
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(content.toByteArray());
+        }
+
+        @Override
+        public void writeOut(byte[] data, int offset, int length) {
+            content.write(data, offset, length);
+        }
+
+        @Override
+        public void closeForWriting() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.bacon.pig.impl.utils;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Download of a single file that survives connection failures.
+ * <p>
+ * If the server supports byte ranges, interrupted downloads are resumed from where they stopped, both within a single
+ * {@link #run(HttpClient)} and when the download is run again, e.g. with a different client. The size of the file and its
+ * support for byte ranges are taken from the response to the first request, no separate <code>HEAD</code> request is sent. If
+ * the response shows a file bigger than <code>pig.download.chunkThresholdMb</code> (64 MB by default), the file is downloaded
+ * in <code>pig.download.chunks</code> (4 by default) byte ranges in parallel, the first of them read from the response that is
+ * already open, written to the preallocated target file with positional writes. The <code>If-Range</code> header guarantees
+ * that all the parts come from the same version of the file.
+ */
+class ResumableDownload {
+    private static final Logger log = LoggerFactory.getLogger(ResumableDownload.class);
+
+    private static final long CHUNK_THRESHOLD = Long.getLong("pig.download.chunkThresholdMb", 64L) * 1024 * 1024;
+    private static final int CHUNKS = Integer.getInteger("pig.download.chunks", 4);
+    private static final int MAX_RESUMES = Integer.getInteger("pig.download.resumes", 5);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final URI url;
+    private final File target;
+
+    private long length = -1;
+    private boolean acceptsRanges;
+    private String validator;
+
+    /**
+     * bytes of the file already written, for a single stream download
+     */
+    private long written;
+    private List<Chunk> chunks;
+
+    ResumableDownload(URI url, File target) {
+        this.url = url;
+        this.target = target;
+    }
+
+    void run(HttpClient client) throws IOException {
+        if (chunks != null) {
+            // a download in parts failed before, resume the parts
+            downloadInChunks(client, null, null);
+        } else {
+            downloadAsStream(client);
+        }
+    }
+
+    private void readHeaders(HttpResponse response) {
+        Header contentLength = response.getFirstHeader("Content-Length");
+        length = contentLength == null ? -1 : Long.parseLong(contentLength.getValue().trim());
+        Header ranges = response.getFirstHeader("Accept-Ranges");
+        acceptsRanges = ranges != null && ranges.getValue().contains("bytes") && length > 0;
+
+        Header etag = response.getFirstHeader("ETag");
+        Header lastModified = response.getFirstHeader("Last-Modified");
+        // weak entity tags cannot be used with If-Range
+        if (etag != null && !etag.getValue().startsWith("W/")) {
+            validator = etag.getValue();
+        } else if (lastModified != null) {
+            validator = lastModified.getValue();
+        }
+    }
+
+    private void downloadAsStream(HttpClient client) throws IOException {
+        for (int attempt = 0;; attempt++) {
+            boolean resume = written > 0 && acceptsRanges;
+            HttpGet request = new HttpGet(url);
+            if (resume) {
+                log.info("Resuming download of {} from byte {}", url, written);
+                setRange(request, written, -1);
+            }
+            HttpResponse response;
+            try {
+                response = execute(client, request);
+            } catch (IOException e) {
+                // reconnecting to resume the download can fail too, e.g. with a server error
+                if (!resume || attempt >= MAX_RESUMES) {
+                    throw e;
+                }
+                log.warn("Failed to resume download of {}: {}", url, e.getMessage());
+                continue;
+            }
+            int statusCode = response.getStatusLine().getStatusCode();
+            boolean partial = resume && statusCode == HttpStatus.SC_PARTIAL_CONTENT;
+            if (!partial) {
+                // the whole file is sent, e.g. if it changed since the previous attempt
+                written = 0;
+                readHeaders(response);
+                if (acceptsRanges && CHUNKS > 1 && length >= CHUNK_THRESHOLD) {
+                    downloadInChunks(client, request, response);
+                    return;
+                }
+            }
+            try (InputStream input = response.getEntity().getContent();
+                    FileChannel output = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE)) {
+                output.truncate(written);
+                written = copy(input, output, written, Long.MAX_VALUE, position -> written = position);
+                return;
+            } catch (IOException e) {
+                request.abort();
+                if (!acceptsRanges || attempt >= MAX_RESUMES) {
+                    throw e;
+                }
+                log.warn("Download of {} interrupted after {} bytes: {}", url, written, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @param firstRequest request whose response is used for the first part, <code>null</code> if there is none
+     * @param firstResponse response with the whole file from its start, <code>null</code> if there is none
+     */
+    private void downloadInChunks(HttpClient client, HttpGet firstRequest, HttpResponse firstResponse) throws IOException {
+        if (chunks == null) {
+            log.info("Downloading {} ({} bytes) in {} parallel parts", url, length, CHUNKS);
+            try (FileChannel output = FileChannel.open(target.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                // preallocate the file
+                output.write(ByteBuffer.wrap(new byte[1]), length - 1);
+            }
+            chunks = new ArrayList<>();
+            long chunkSize = (length + CHUNKS - 1) / CHUNKS;
+            for (long start = 0; start < length; start += chunkSize) {
+                chunks.add(new Chunk(start, Math.min(start + chunkSize, length)));
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(chunks.size(), runnable -> {
+            Thread thread = new Thread(runnable, "download-part");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (FileChannel output = FileChannel.open(target.toPath(), StandardOpenOption.WRITE)) {
+            List<Future<?>> results = new ArrayList<>();
+            for (Chunk chunk : chunks) {
+                boolean first = firstResponse != null && chunk == chunks.get(0);
+                results.add(executor.submit(() -> {
+                    if (first) {
+                        downloadFirstChunk(client, chunk, output, firstRequest, firstResponse);
+                    } else {
+                        downloadChunk(client, chunk, output);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while downloading " + url, e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause()
+                    : new IOException("Failed to download " + url, e.getCause());
+        } finally {
+            executor.shutdownNow();
+            if (firstRequest != null) {
+                firstRequest.abort();
+            }
+        }
+    }
+
+    private void downloadFirstChunk(HttpClient client, Chunk chunk, FileChannel output, HttpGet request, HttpResponse response)
+            throws IOException {
+        try (InputStream input = response.getEntity().getContent()) {
+            copy(input, output, chunk.position, chunk.end, position -> chunk.position = position);
+            // the rest of the file is downloaded by the other parts, the response is not read to its end
+            request.abort();
+        } catch (IOException e) {
+            request.abort();
+            log.warn("Download of a part of {} interrupted at byte {}: {}", url, chunk.position, e.getMessage());
+        }
+        // resumes the part if it was interrupted
+        downloadChunk(client, chunk, output);
+    }
+
+    private void downloadChunk(HttpClient client, Chunk chunk, FileChannel output) throws IOException {
+        for (int attempt = 0; chunk.position < chunk.end; attempt++) {
+            HttpGet request = new HttpGet(url);
+            setRange(request, chunk.position, chunk.end - 1);
+            HttpResponse response;
+            try {
+                response = execute(client, request);
+            } catch (IOException e) {
+                if (attempt >= MAX_RESUMES) {
+                    throw e;
+                }
+                log.warn("Failed to request a part of {} from byte {}: {}", url, chunk.position, e.getMessage());
+                continue;
+            }
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode != HttpStatus.SC_PARTIAL_CONTENT) {
+                EntityUtils.consumeQuietly(response.getEntity());
+                // e.g. 200 if the file changed since the download started, the parts cannot be combined
+                throw new IOException("Unexpected status code " + statusCode + " for a part of " + url);
+            }
+            try (InputStream input = response.getEntity().getContent()) {
+                copy(input, output, chunk.position, chunk.end, position -> chunk.position = position);
+                if (chunk.position < chunk.end) {
+                    throw new IOException("Part of " + url + " ended prematurely at byte " + chunk.position);
+                }
+            } catch (IOException e) {
+                request.abort();
+                if (attempt >= MAX_RESUMES) {
+                    throw e;
+                }
+                log.warn("Download of a part of {} interrupted at byte {}: {}", url, chunk.position, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the response, if its status code is a success one
+     */
+    private HttpResponse execute(HttpClient client, HttpGet request) throws IOException {
+        try {
+            HttpResponse response = client.execute(request);
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (!isSuccess(statusCode)) {
+                EntityUtils.consumeQuietly(response.getEntity());
+                throw new IOException("Invalid status code " + statusCode + " for download of " + url);
+            }
+            return response;
+        } catch (IOException e) {
+            request.abort();
+            throw e;
+        }
+    }
+
+    private void setRange(HttpGet request, long from, long to) {
+        request.setHeader("Range", "bytes=" + from + "-" + (to >= 0 ? String.valueOf(to) : ""));
+        if (validator != null) {
+            request.setHeader("If-Range", validator);
+        }
+    }
+
+    /**
+     * Copy the input to the channel, starting at <code>position</code>, at most up to <code>end</code>, reporting the progress
+     * after every write
+     *
+     * @return the position after the last written byte
+     */
+    private static long copy(InputStream input, FileChannel output, long position, long end, Progress progress)
+            throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while (position < end && (read = input.read(buffer, 0, (int) Math.min(buffer.length, end - position))) != -1) {
+            ByteBuffer data = ByteBuffer.wrap(buffer, 0, read);
+            while (data.hasRemaining()) {
+                position += output.write(data, position);
+            }
+            progress.update(position);
+        }
+        return position;
+    }
+
+    private static boolean isSuccess(int statusCode) {
+        return statusCode >= 200 && statusCode <= 299;
+    }
+
+    private interface Progress {
+        void update(long position);
+    }
+
+    private static class Chunk {
+        private final long end;
+        private volatile long position;
+
+        private Chunk(long start, long end) {
+            this.position = start;
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,478 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.bacon.pig.impl.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Client side of a WebSocket (RFC 6455) connection that receives text messages.
+ * <p>
+ * Only what is needed to listen to notifications is supported: text messages, also fragmented ones, pings and closing of the
+ * connection. Messages are read by a daemon thread and passed to the message listener. When the connection is closed, by either
+ * side or because of an error, the close listener is called once.
+ * <p>
+ * If nothing is received for the ping interval, <code>pig.websocket.pingIntervalSeconds</code> (30 by default), the server is
+ * pinged. If nothing is received for another ping interval, the connection is considered broken and closed.
+ * <p>
+ * The connection is made through the proxy that the default {@link ProxySelector} selects for the corresponding
+ * <code>http</code> or <code>https</code> uri, i.e. the proxy configured with the standard <code>http.proxyHost</code>,
+ * <code>https.proxyHost</code> or <code>socksProxyHost</code> system properties. HTTP proxies are used with the
+ * <code>CONNECT</code> method, proxy authentication is not supported.
+ */
+public class WebSocketConnection implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(WebSocketConnection.class);
+
+    private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final int MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
+    private static final int MAX_LINE_LENGTH = 8 * 1024;
+    private static final int MAX_HEADERS = 100;
+    private static final int DEFAULT_PING_INTERVAL = Integer.getInteger("pig.websocket.pingIntervalSeconds", 30) * 1000;
+    private static final int NORMAL_CLOSURE = 1000;
+
+    private static final int CONTINUATION = 0x0;
+    private static final int TEXT = 0x1;
+    private static final int BINARY = 0x2;
+    private static final int CLOSE = 0x8;
+    private static final int PING = 0x9;
+    private static final int PONG = 0xA;
+
+    private final URI uri;
+    private final int pingInterval;
+    private final Socket socket;
+    private final InputStream input;
+    private final OutputStream output;
+    private final Consumer<String> messageListener;
+    private final Runnable closeListener;
+
+    private final SecureRandom random = new SecureRandom();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    /**
+     * whether a ping was sent and nothing was received since, only used by the reader thread
+     */
+    private boolean pinged;
+
+    private WebSocketConnection(URI uri, int pingInterval, Socket socket, Consumer<String> messageListener,
+            Runnable closeListener) throws IOException {
+        this.uri = uri;
+        this.pingInterval = pingInterval;
+        this.socket = socket;
+        this.input = new BufferedInputStream(socket.getInputStream());
+        this.output = new BufferedOutputStream(socket.getOutputStream());
+        this.messageListener = messageListener;
+        this.closeListener = closeListener;
+    }
+
+    /**
+     * Open a connection and start receiving messages
+     *
+     * @param uri <code>ws://</code> or <code>wss://</code> uri to connect to
+     * @param timeout [milliseconds] timeout of connecting and of the opening handshake
+     * @param messageListener called with every text message received
+     * @param closeListener called when the connection is closed
+     * @return the open connection
+     * @throws IOException if the connection cannot be established
+     */
+    public static WebSocketConnection open(URI uri, int timeout, Consumer<String> messageListener, Runnable closeListener)
+            throws IOException {
+        return open(uri, timeout, DEFAULT_PING_INTERVAL, messageListener, closeListener);
+    }
+
+    /**
+     * Open a connection and start receiving messages
+     *
+     * @param uri <code>ws://</code> or <code>wss://</code> uri to connect to
+     * @param timeout [milliseconds] timeout of connecting and of the opening handshake
+     * @param pingInterval [milliseconds] how long to wait for a message before pinging the server, and then for a response to
+     *        the ping before closing the connection
+     * @param messageListener called with every text message received
+     * @param closeListener called when the connection is closed
+     * @return the open connection
+     * @throws IOException if the connection cannot be established
+     */
+    public static WebSocketConnection open(URI uri, int timeout, int pingInterval, Consumer<String> messageListener,
+            Runnable closeListener) throws IOException {
+        boolean secure = "wss".equalsIgnoreCase(uri.getScheme());
+        if (!secure && !"ws".equalsIgnoreCase(uri.getScheme())) {
+            throw new IOException("Unsupported WebSocket uri " + uri);
+        }
+        int port = uri.getPort() != -1 ? uri.getPort() : secure ? 443 : 80;
+
+        Socket socket = connect(uri.getHost(), port, secure, timeout);
+        try {
+            WebSocketConnection connection = new WebSocketConnection(uri, pingInterval, socket, messageListener, closeListener);
+            connection.handshake(port, secure ? 443 : 80);
+            // a read timeout makes the reader ping the server
+            socket.setSoTimeout(pingInterval);
+
+            Thread reader = new Thread(connection::read, "websocket-reader");
+            reader.setDaemon(true);
+            reader.start();
+            return connection;
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(socket);
+            throw e;
+        }
+    }
+
+    public boolean isOpen() {
+        return !closed.get();
+    }
+
+    @Override
+    public void close() {
+        if (isOpen()) {
+            try {
+                send(CLOSE, new byte[] { (byte) (NORMAL_CLOSURE >> 8), (byte) NORMAL_CLOSURE });
+            } catch (IOException e) {
+                log.debug("Failed to send close frame to {}", uri, e);
+            }
+        }
+        disconnect();
+    }
+
+    /**
+     * Connect to the host, directly or through a proxy, and set up TLS for a secure connection
+     */
+    private static Socket connect(String host, int port, boolean secure, int timeout) throws IOException {
+        Proxy proxy = selectProxy(host, port, secure);
+        Socket socket = proxy.type() == Proxy.Type.SOCKS ? new Socket(proxy) : new Socket();
+        try {
+            if (proxy.type() == Proxy.Type.HTTP) {
+                InetSocketAddress proxyAddress = (InetSocketAddress) proxy.address();
+                socket.connect(new InetSocketAddress(proxyAddress.getHostString(), proxyAddress.getPort()), timeout);
+                socket.setSoTimeout(timeout);
+                tunnel(socket, host, port);
+            } else {
+                socket.connect(new InetSocketAddress(host, port), timeout);
+                socket.setSoTimeout(timeout);
+            }
+            if (!secure) {
+                return socket;
+            }
+            SSLSocket sslSocket = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault()).createSocket(socket, host,
+                    port, true);
+            SSLParameters parameters = sslSocket.getSSLParameters();
+            parameters.setEndpointIdentificationAlgorithm("HTTPS");
+            sslSocket.setSSLParameters(parameters);
+            return sslSocket;
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(socket);
+            throw e;
+        }
+    }
+
+    private static Proxy selectProxy(String host, int port, boolean secure) {
+        ProxySelector selector = ProxySelector.getDefault();
+        if (selector == null) {
+            return Proxy.NO_PROXY;
+        }
+        List<Proxy> proxies = selector.select(URI.create((secure ? "https" : "http") + "://" + host + ":" + port));
+        return proxies == null || proxies.isEmpty() ? Proxy.NO_PROXY : proxies.get(0);
+    }
+
+    /**
+     * Open a tunnel to the host through the HTTP proxy the socket is connected to
+     */
+    private static void tunnel(Socket socket, String host, int port) throws IOException {
+        String request = "CONNECT " + host + ":" + port + " HTTP/1.1\r\n" + "Host: " + host + ":" + port + "\r\n" + "\r\n";
+        OutputStream output = socket.getOutputStream();
+        output.write(request.getBytes(StandardCharsets.US_ASCII));
+        output.flush();
+
+        // the response is read without buffering, so that no byte sent by the host through the tunnel is lost
+        List<String> response = readResponseHead(socket.getInputStream());
+        if (!response.get(0).matches("HTTP/1\\.[01] 200( .*)?")) {
+            throw new IOException("Proxy refused to connect to " + host + ":" + port + ": " + response.get(0));
+        }
+    }
+
+    private void handshake(int port, int defaultPort) throws IOException {
+        byte[] keyBytes = new byte[16];
+        random.nextBytes(keyBytes);
+        String key = Base64.getEncoder().encodeToString(keyBytes);
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        if (uri.getRawQuery() != null) {
+            path += "?" + uri.getRawQuery();
+        }
+        String request = "GET " + path + " HTTP/1.1\r\n" + "Host: " + uri.getHost() + (port == defaultPort ? "" : ":" + port)
+                + "\r\n" + "Upgrade: websocket\r\n" + "Connection: Upgrade\r\n" + "Sec-WebSocket-Key: " + key + "\r\n"
+                + "Sec-WebSocket-Version: 13\r\n" + "\r\n";
+        output.write(request.getBytes(StandardCharsets.US_ASCII));
+        output.flush();
+
+        List<String> response = readResponseHead(input);
+        String statusLine = response.get(0);
+        if (!statusLine.matches("HTTP/1\\.1 101( .*)?")) {
+            throw new IOException("WebSocket handshake with " + uri + " failed: " + statusLine);
+        }
+        String accept = null;
+        for (String line : response.subList(1, response.size())) {
+            int colon = line.indexOf(':');
+            if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Sec-WebSocket-Accept")) {
+                accept = line.substring(colon + 1).trim();
+            }
+        }
+        if (!acceptFor(key).equals(accept)) {
+            throw new IOException("WebSocket handshake with " + uri + " failed: invalid Sec-WebSocket-Accept " + accept);
+        }
+    }
+
+    private void read() {
+        ByteArrayOutputStream message = null;
+        boolean text = false;
+        try {
+            while (isOpen()) {
+                int first = readByte();
+                int second = readByte();
+                boolean fin = (first & 0x80) != 0;
+                int opcode = first & 0x0F;
+                long length = second & 0x7F;
+                if (length == 126) {
+                    length = (readByte() << 8) | readByte();
+                } else if (length == 127) {
+                    length = 0;
+                    for (int i = 0; i < 8; i++) {
+                        length = (length << 8) | readByte();
+                    }
+                }
+                if (length > MAX_MESSAGE_SIZE || length < 0) {
+                    throw new IOException("WebSocket frame of " + length + " bytes is too big");
+                }
+                byte[] mask = (second & 0x80) != 0 ? readFully(4) : null;
+                byte[] payload = readFully((int) length);
+                if (mask != null) {
+                    for (int i = 0; i < payload.length; i++) {
+                        payload[i] ^= mask[i % 4];
+                    }
+                }
+
+                switch (opcode) {
+                    case TEXT:
+                    case BINARY:
+                        message = new ByteArrayOutputStream();
+                        text = opcode == TEXT;
+                        break;
+                    case CONTINUATION:
+                        if (message == null) {
+                            throw new IOException("Unexpected continuation frame");
+                        }
+                        break;
+                    case PING:
+                        send(PONG, payload);
+                        continue;
+                    case PONG:
+                        continue;
+                    case CLOSE:
+                        log.debug("WebSocket connection to {} closed by the server", uri);
+                        close();
+                        return;
+                    default:
+                        throw new IOException("Unsupported WebSocket opcode " + opcode);
+                }
+
+                if (message.size() + payload.length > MAX_MESSAGE_SIZE) {
+                    throw new IOException("WebSocket message is too big");
+                }
+                message.write(payload);
+                if (fin) {
+                    if (text) {
+                        deliver(new String(message.toByteArray(), StandardCharsets.UTF_8));
+                    }
+                    message = null;
+                }
+            }
+        } catch (IOException e) {
+            if (isOpen()) {
+                log.debug("WebSocket connection to {} failed", uri, e);
+            }
+        } finally {
+            disconnect();
+        }
+    }
+
+    private void deliver(String message) {
+        try {
+            messageListener.accept(message);
+        } catch (RuntimeException e) {
+            log.warn("Failed to process a message from {}", uri, e);
+        }
+    }
+
+    private synchronized void send(int opcode, byte[] payload) throws IOException {
+        output.write(0x80 | opcode);
+        if (payload.length < 126) {
+            output.write(0x80 | payload.length);
+        } else if (payload.length <= 0xFFFF) {
+            output.write(0x80 | 126);
+            output.write(payload.length >> 8);
+            output.write(payload.length);
+        } else {
+            output.write(0x80 | 127);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                output.write((int) ((long) payload.length >> shift));
+            }
+        }
+        // frames sent by a client must be masked
+        byte[] mask = new byte[4];
+        random.nextBytes(mask);
+        output.write(mask);
+        byte[] masked = new byte[payload.length];
+        for (int i = 0; i < payload.length; i++) {
+            masked[i] = (byte) (payload[i] ^ mask[i % 4]);
+        }
+        output.write(masked);
+        output.flush();
+    }
+
+    private void disconnect() {
+        if (closed.compareAndSet(false, true)) {
+            closeQuietly(socket);
+            closeListener.run();
+        }
+    }
+
+    /**
+     * @return the status line and the header lines of an HTTP response
+     */
+    private static List<String> readResponseHead(InputStream input) throws IOException {
+        List<String> lines = new ArrayList<>();
+        String line;
+        while (!(line = readLine(input)).isEmpty()) {
+            if (lines.size() > MAX_HEADERS) {
+                throw new IOException("HTTP response has more than " + MAX_HEADERS + " headers");
+            }
+            lines.add(line);
+        }
+        if (lines.isEmpty()) {
+            throw new IOException("HTTP response has no status line");
+        }
+        return lines;
+    }
+
+    private static String readLine(InputStream input) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int current;
+        while ((current = input.read()) != '\n') {
+            if (current == -1) {
+                throw new EOFException("Connection closed before the end of the HTTP response");
+            }
+            if (line.size() >= MAX_LINE_LENGTH) {
+                throw new IOException("HTTP response line is longer than " + MAX_LINE_LENGTH + " bytes");
+            }
+            if (current != '\r') {
+                line.write(current);
+            }
+        }
+        return new String(line.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+
+    private int readByte() throws IOException {
+        while (true) {
+            try {
+                int value = input.read();
+                if (value == -1) {
+                    throw new EOFException("WebSocket connection to " + uri + " closed");
+                }
+                pinged = false;
+                return value;
+            } catch (SocketTimeoutException e) {
+                ping(e);
+            }
+        }
+    }
+
+    private byte[] readFully(int length) throws IOException {
+        byte[] result = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            int read;
+            try {
+                read = input.read(result, offset, length - offset);
+            } catch (SocketTimeoutException e) {
+                ping(e);
+                continue;
+            }
+            if (read == -1) {
+                throw new EOFException("WebSocket connection to " + uri + " closed");
+            }
+            pinged = false;
+            offset += read;
+        }
+        return result;
+    }
+
+    /**
+     * Nothing was received for the ping interval, ping the server, unless it did not respond to the previous ping
+     */
+    private void ping(SocketTimeoutException timeout) throws IOException {
+        if (pinged) {
+            throw new IOException("Nothing received from " + uri + " for " + 2 * pingInterval + " ms", timeout);
+        }
+        send(PING, new byte[0]);
+        pinged = true;
+    }
+
+    /**
+     * @return the value of the <code>Sec-WebSocket-Accept</code> header expected for the key
+     */
+    public static String acceptFor(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha1.digest((key + ACCEPT_GUID).getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-1 is not available", e);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            log.debug("Failed to close socket", e);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.bacon.pig.impl.documents.sharedcontent;
+
+import org.jboss.pnc.bacon.pig.impl.utils.GAV;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+/**
+ * Tests of MRRC checks against a local directory stand-in of MRRC, accessed with a <code>file:</code> url
+ */
+class MRRCSearcherTest {
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private static final GAV RELEASED = new GAV("org.acme", "released", "1.0.0.redhat-00001", "jar");
+    private static final GAV NOT_RELEASED = new GAV("org.acme", "not-released", "1.0.0.redhat-00001", "jar");
+
+    @TempDir
+    Path tempDir;
+
+    private Path repository;
+    private String mrrcUrl;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        repository = Files.createDirectory(tempDir.resolve("mrrc"));
+        mrrcUrl = repository.toUri().toString();
+        release(RELEASED);
+    }
+
+    @Test
+    void shouldFindReleasedArtifact() {
+        MRRCSearcher searcher = new MRRCSearcher(mrrcUrl, null, HOUR, 2);
+
+        assertThat(searcher.isReleased(RELEASED)).isTrue();
+        assertThat(searcher.isReleased(NOT_RELEASED)).isFalse();
+    }
+
+    @Test
+    void shouldReadReleasedArtifactFromDiskCache() throws IOException {
+        Path cacheDir = tempDir.resolve("cache");
+        assertThat(new MRRCSearcher(mrrcUrl, cacheDir.toFile(), HOUR, 2).isReleased(RELEASED)).isTrue();
+
+        // a new searcher, e.g. of the next run, doesn't ask MRRC about artifacts released before
+        Files.delete(repository.resolve(RELEASED.toUri()));
+        MRRCSearcher searcher = new MRRCSearcher(mrrcUrl, cacheDir.toFile(), HOUR, 2);
+
+        assertThat(searcher.isReleased(RELEASED)).isTrue();
+        assertThat(searcher.isReleased(NOT_RELEASED)).isFalse();
+    }
+
+    @Test
+    void shouldCacheNotReleasedArtifactUntilTtlExpires() throws IOException {
+        MRRCSearcher searcher = new MRRCSearcher(mrrcUrl, null, HOUR, 2);
+        MRRCSearcher expiringSearcher = new MRRCSearcher(mrrcUrl, null, 0, 2);
+        assertThat(searcher.isReleased(NOT_RELEASED)).isFalse();
+        assertThat(expiringSearcher.isReleased(NOT_RELEASED)).isFalse();
+
+        release(NOT_RELEASED);
+
+        assertThat(searcher.isReleased(NOT_RELEASED)).isFalse();
+        assertThat(expiringSearcher.isReleased(NOT_RELEASED)).isTrue();
+    }
+
+    @Test
+    void shouldCheckInBulkLikeOneByOne() throws IOException {
+        GAV releasedPom = new GAV("org.acme", "parent", "2.0.0.redhat-00002", "pom");
+        release(releasedPom);
+        List<GAV> gavs = Arrays.asList(RELEASED, NOT_RELEASED, releasedPom,
+                new GAV("org.acme.other", "released", "1.0.0.redhat-00001", "jar"));
+
+        Map<String, Boolean> bulk = new MRRCSearcher(mrrcUrl, null, HOUR, 2).areReleased(gavs);
+
+        MRRCSearcher searcher = new MRRCSearcher(mrrcUrl, null, HOUR, 2);
+        Map<String, Boolean> oneByOne = new HashMap<>();
+        gavs.forEach(gav -> oneByOne.put(gav.toUri(), searcher.isReleased(gav)));
+        assertThat(bulk).isEqualTo(oneByOne);
+        assertThat(bulk).containsEntry(RELEASED.toUri(), true).containsEntry(NOT_RELEASED.toUri(), false)
+                .containsEntry(releasedPom.toUri(), true);
+    }
+
+    @Test
+    void shouldCheckArtifactsWithClassifiersSeparately() {
+        GAV tests = new GAV(RELEASED.getGroupId(), RELEASED.getArtifactId(), RELEASED.getVersion(), "jar", "tests");
+
+        Map<String, Boolean> result = new MRRCSearcher(mrrcUrl, null, HOUR, 2).areReleased(Arrays.asList(RELEASED, tests));
+
+        // an unreleased artifact with a classifier doesn't make the main artifact unreleased
+        assertThat(result).containsOnly(entry(RELEASED.toUri(), true), entry(tests.toUri(), false));
+    }
+
+    private void release(GAV gav) throws IOException {
+        Path file = repository.resolve(gav.toUri());
+        Files.createDirectories(file.getParent());
+        Files.write(file, gav.toGapv().getBytes());
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.bacon.pig.impl.pnc;
+
+import org.jboss.pnc.bacon.pig.impl.utils.WebSocketServerStub;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.URI;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.jboss.pnc.bacon.pig.impl.utils.WebSocketServerStub.send;
+
+/**
+ * Tests of group build notifications against a local stand-in of the PNC notification WebSocket
+ */
+class GroupBuildNotificationsTest {
+
+    private WebSocketServerStub server;
+    private GroupBuildNotifications notifications;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new WebSocketServerStub();
+    }
+
+    @AfterEach
+    void stopServer() throws IOException {
+        if (notifications != null) {
+            notifications.close();
+        }
+        server.close();
+    }
+
+    @Test
+    void shouldNotifyGroupBuildChange() throws Exception {
+        subscribe("12");
+        send(server.awaitConnection(),
+                "{\"job\":\"GROUP_BUILD\",\"progress\":\"FINISHED\",\"groupBuild\":{\"id\":\"12\",\"status\":\"SUCCESS\"}}");
+
+        assertThat(notifications.awaitChange(5_000)).isTrue();
+        assertThat(notifications.getFailure()).isNull();
+    }
+
+    @Test
+    void shouldReportFailedBuildOfTheGroup() throws Exception {
+        subscribe("12");
+        send(server.awaitConnection(),
+                "{\"job\":\"BUILD\",\"build\":{\"id\":\"100\",\"status\":\"FAILED\",\"groupBuild\":{\"id\":\"12\"}}}");
+
+        assertThat(notifications.awaitChange(5_000)).isTrue();
+        assertThat(notifications.getFailure()).contains("100").contains("FAILED");
+    }
+
+    @Test
+    void shouldIgnoreOtherGroupBuildsAndRunningBuilds() throws Exception {
+        subscribe("12");
+        Socket connection = server.awaitConnection();
+        send(connection, "{\"job\":\"GROUP_BUILD\",\"groupBuild\":{\"id\":\"13\",\"status\":\"FAILED\"}}");
+        send(connection,
+                "{\"job\":\"BUILD\",\"build\":{\"id\":\"100\",\"status\":\"BUILDING\",\"groupBuild\":{\"id\":\"12\"}}}");
+        send(connection, "not a json");
+
+        assertThat(notifications.awaitChange(500)).isFalse();
+        assertThat(notifications.isOpen()).isTrue();
+        assertThat(notifications.getFailure()).isNull();
+    }
+
+    @Test
+    void shouldStopWaitingWhenTheConnectionIsClosed() throws Exception {
+        subscribe("12");
+        server.awaitConnection().close();
+
+        assertThat(notifications.awaitChange(5_000)).isFalse();
+        assertThat(notifications.isOpen()).isFalse();
+    }
+
+    @Test
+    void shouldNotSubscribeIfNotificationsAreUnavailable() throws IOException {
+        URI uri = server.getUri();
+        server.close();
+
+        assertThat(GroupBuildNotifications.subscribe(uri, "12")).isNull();
+    }
+
+    private void subscribe(String groupBuildId) {
+        notifications = GroupBuildNotifications.subscribe(server.getUri(), groupBuildId);
+        assertThat(notifications).isNotNull();
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.bacon.pig.impl.pnc;
+
+import org.jboss.pnc.bacon.pig.impl.utils.WebSocketServerStub;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.jboss.pnc.bacon.pig.impl.pnc.PncBuilder.MAX_POLL_INTERVAL;
+import static org.jboss.pnc.bacon.pig.impl.pnc.PncBuilder.MIN_POLL_INTERVAL;
+import static org.jboss.pnc.bacon.pig.impl.pnc.PncBuilder.RESUBSCRIBE_INTERVAL;
+import static org.jboss.pnc.bacon.pig.impl.utils.WebSocketServerStub.send;
+
+/**
+ * Tests of waiting for a group build, with the group build status stubbed and notifications sent by a local stand-in of the PNC
+ * notification WebSocket. Waiting between polls only advances the clock of the builder.
+ */
+class PncBuilderTest {
+
+    private static final String GROUP_BUILD_ID = "12";
+
+    private WebSocketServerStub server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new WebSocketServerStub();
+    }
+
+    @AfterEach
+    void stopServer() throws IOException {
+        server.close();
+    }
+
+    @Test
+    void shouldPollWithGrowingIntervalWithoutNotifications() {
+        TestBuilder builder = new TestBuilder(check -> check > 6);
+
+        builder.waitForSuccessfulFinish(GROUP_BUILD_ID, null, null);
+
+        assertThat(builder.sleeps).containsExactly(2, 4, 8, 16, MAX_POLL_INTERVAL, MAX_POLL_INTERVAL);
+    }
+
+    @Test
+    void shouldCheckGroupBuildWhenNotified() {
+        TestBuilder builder = new TestBuilder(check -> {
+            if (check == 1) {
+                sendNotification("{\"job\":\"GROUP_BUILD\",\"groupBuild\":{\"id\":\"12\",\"status\":\"SUCCESS\"}}");
+            }
+            return check > 1;
+        });
+
+        builder.waitForSuccessfulFinish(GROUP_BUILD_ID, server.getUri(), null);
+
+        assertThat(builder.checks.get()).isEqualTo(2);
+        assertThat(builder.sleeps).isEmpty();
+    }
+
+    @Test
+    void shouldFailWhenNotifiedOfFailedBuild() {
+        TestBuilder builder = new TestBuilder(check -> {
+            if (check == 1) {
+                sendNotification(
+                        "{\"job\":\"BUILD\",\"build\":{\"id\":\"100\",\"status\":\"FAILED\",\"groupBuild\":{\"id\":\"12\"}}}");
+            }
+            return false;
+        });
+
+        assertThatThrownBy(() -> builder.waitForSuccessfulFinish(GROUP_BUILD_ID, server.getUri(), null))
+                .hasMessageContaining("build 100 finished with status FAILED");
+        assertThat(builder.sleeps).isEmpty();
+    }
+
+    @Test
+    void shouldFallBackToPollingAndResubscribeWhenNotificationsStop() {
+        TestBuilder builder = new TestBuilder(check -> {
+            if (check == 1) {
+                disconnect();
+            }
+            // the group build finishes once it is checked after subscribing again
+            return server.getConnectionCount() == 2;
+        });
+
+        builder.waitForSuccessfulFinish(GROUP_BUILD_ID, server.getUri(), null);
+
+        assertThat(builder.sleeps).startsWith(2, 4, 8, 16, MAX_POLL_INTERVAL).allMatch(s -> s <= MAX_POLL_INTERVAL);
+        assertThat(builder.sleeps.stream().mapToLong(s -> s * 1000L).sum()).isGreaterThanOrEqualTo(RESUBSCRIBE_INTERVAL)
+                .isLessThan(RESUBSCRIBE_INTERVAL + MAX_POLL_INTERVAL * 1000L);
+        assertThat(server.getConnectionCount()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldPollIfNotificationsAreUnavailable() throws IOException {
+        server.close();
+        TestBuilder builder = new TestBuilder(check -> check > 2);
+
+        builder.waitForSuccessfulFinish(GROUP_BUILD_ID, server.getUri(), null);
+
+        assertThat(builder.sleeps).containsExactly(MIN_POLL_INTERVAL, 2 * MIN_POLL_INTERVAL);
+    }
+
+    private void sendNotification(String notification) {
+        try {
+            send(server.awaitConnection(), notification);
+        } catch (IOException | InterruptedException e) {
+            throw new RuntimeException("Failed to send a notification", e);
+        }
+    }
+
+    private void disconnect() {
+        try {
+            Socket connection = server.awaitConnection();
+            connection.close();
+        } catch (IOException | InterruptedException e) {
+            throw new RuntimeException("Failed to close the notification connection", e);
+        }
+    }
+
+    private static class TestBuilder extends PncBuilder {
+        private final IntPredicate finishedOnCheck;
+        private final AtomicInteger checks = new AtomicInteger();
+        private final List<Integer> sleeps = new ArrayList<>();
+        private long time;
+
+        private TestBuilder(IntPredicate finishedOnCheck) {
+            super(null, null);
+            this.finishedOnCheck = finishedOnCheck;
+        }
+
+        @Override
+        boolean isSuccessfullyFinished(String groupBuildId) {
+            assertThat(groupBuildId).isEqualTo(GROUP_BUILD_ID);
+            return finishedOnCheck.test(checks.incrementAndGet());
+        }
+
+        @Override
+        void sleep(int seconds) {
+            sleeps.add(seconds);
+            time += seconds * 1000L;
+        }
+
+        @Override
+        long currentTimeMillis() {
+            return time;
+        }
+    }
+}
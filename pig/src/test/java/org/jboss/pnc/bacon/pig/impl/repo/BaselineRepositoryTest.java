@@ -0,0 +1,101 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.bacon.pig.impl.repo;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.IOUtils;
+import org.jboss.pnc.bacon.pig.impl.utils.ChecksumUtils;
+import org.jboss.pnc.bacon.pig.impl.utils.ChecksumUtils.Algorithm;
+import org.jboss.pnc.bacon.pig.impl.utils.FileUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of zipping a repository with entries carried over from a baseline repository zip
+ */
+class BaselineRepositoryTest {
+
+    private static final String JAR = "org/acme/acme-core/1.0.0.redhat-00001/acme-core-1.0.0.redhat-00001.jar";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void shouldCarryOverEntriesWithTheirUnixMode() throws IOException {
+        File baselineZip = tempDir.resolve("baseline.zip").toFile();
+        Path baselineRepository = createRepository(tempDir.resolve("baseline"));
+        Path jar = baselineRepository.resolve(JAR);
+        Files.write(jar.resolveSibling(jar.getFileName() + Algorithm.SHA1.getExtension()),
+                ChecksumUtils.checksum(jar, Algorithm.SHA1).getBytes(StandardCharsets.UTF_8));
+        FileUtils.zip(baselineZip, tempDir.resolve("baseline").toFile(), baselineRepository.getParent().toFile());
+
+        Path currentRepository = createRepository(tempDir.resolve("current"));
+        File freshZip = tempDir.resolve("fresh.zip").toFile();
+        FileUtils.zip(freshZip, tempDir.resolve("current").toFile(), currentRepository.getParent().toFile());
+
+        File incrementalZip = tempDir.resolve("incremental.zip").toFile();
+        try (BaselineRepository baseline = BaselineRepository.open(baselineZip)) {
+            baseline.carryOver(RepositoryIndex.build(currentRepository.toFile()));
+            FileUtils.zip(incrementalZip, tempDir.resolve("current").toFile(), currentRepository.getParent().toFile(),
+                    baseline);
+        }
+
+        String entryName = "acme-1.0/maven-repository/" + JAR;
+        try (ZipFile fresh = new ZipFile(freshZip); ZipFile incremental = new ZipFile(incrementalZip)) {
+            ZipArchiveEntry freshEntry = fresh.getEntry(entryName);
+            ZipArchiveEntry carriedOver = incremental.getEntry(entryName);
+
+            assertThat(freshEntry.getPlatform()).isEqualTo(ZipArchiveEntry.PLATFORM_UNIX);
+            assertThat(carriedOver.getPlatform()).isEqualTo(freshEntry.getPlatform());
+            assertThat(carriedOver.getUnixMode()).isEqualTo(freshEntry.getUnixMode());
+            assertThat(carriedOver.getExternalAttributes()).isEqualTo(freshEntry.getExternalAttributes());
+            assertThat(content(incremental, carriedOver)).isEqualTo(content(fresh, freshEntry));
+            // the checksum is carried over from the baseline too
+            assertThat(incremental.getEntry(entryName + Algorithm.SHA1.getExtension())).isNotNull();
+        }
+    }
+
+    /**
+     * @return the maven repository directory, in a top level directory of the parent directory
+     */
+    private static Path createRepository(Path parentDirectory) throws IOException {
+        Path repository = parentDirectory.resolve("acme-1.0").resolve("maven-repository");
+        Path jar = repository.resolve(JAR);
+        Files.createDirectories(jar.getParent());
+        Files.write(jar, "acme-core content".getBytes(StandardCharsets.UTF_8));
+        Files.setPosixFilePermissions(jar, PosixFilePermissions.fromString("rwxr-x---"));
+        return repository;
+    }
+
+    private static byte[] content(ZipFile zip, ZipArchiveEntry entry) throws IOException {
+        try (InputStream input = zip.getInputStream(entry)) {
+            return IOUtils.toByteArray(input);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.bacon.pig.impl.utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of downloads from a local HTTP server that supports byte ranges and can cut responses off or fail requests
+ */
+class ResumableDownloadTest {
+
+    private static final String ETAG = "\"v1\"";
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private CloseableHttpClient client;
+
+    /**
+     * <code>Range</code> and <code>If-Range</code> headers of the requests, an empty string for requests without a range
+     */
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    /**
+     * the next truncated responses are cut off after half of their content
+     */
+    private final AtomicInteger truncated = new AtomicInteger();
+    /**
+     * the next requests for a range fail with 503
+     */
+    private final AtomicInteger failedRanges = new AtomicInteger();
+    private volatile byte[] content;
+    private volatile String etag = ETAG;
+    /**
+     * if set, the file changes to this content after the first truncated response
+     */
+    private volatile byte[] changedContent;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        serverExecutor = Executors.newFixedThreadPool(8);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(serverExecutor);
+        server.createContext("/file", this::serve);
+        server.start();
+        client = HttpClients.custom().disableAutomaticRetries().build();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        client.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    void shouldResumeInterruptedDownload() throws IOException {
+        content = randomContent(1024 * 1024);
+        truncated.set(1);
+
+        File target = download();
+
+        assertContent(target, content);
+        assertThat(requests).containsExactly("", "bytes=" + content.length / 2 + "- " + ETAG);
+    }
+
+    @Test
+    void shouldRetryResumeThatFails() throws IOException {
+        content = randomContent(1024 * 1024);
+        truncated.set(1);
+        failedRanges.set(2);
+
+        File target = download();
+
+        assertContent(target, content);
+        String resume = "bytes=" + content.length / 2 + "- " + ETAG;
+        assertThat(requests).containsExactly("", resume, resume, resume);
+    }
+
+    @Test
+    void shouldDownloadWholeFileIfItChangedBeforeResume() throws IOException {
+        content = randomContent(1024 * 1024);
+        changedContent = randomContent(1000);
+        truncated.set(1);
+        String resume = "bytes=" + content.length / 2 + "- " + ETAG;
+
+        File target = download();
+
+        // the server responds with 200 and the new file instead of 206
+        assertContent(target, changedContent);
+        assertThat(requests).containsExactly("", resume);
+    }
+
+    @Test
+    void shouldDownloadBigFileInParts() throws IOException {
+        // bigger than the default pig.download.chunkThresholdMb
+        content = randomContent(64 * 1024 * 1024 + 1000);
+        failedRanges.set(1);
+
+        File target = download();
+
+        assertContent(target, content);
+        // the first part is read from the first response, the other 3 parts are requested with a range
+        assertThat(requests.get(0)).isEqualTo("");
+        List<String> ranges = requests.subList(1, requests.size());
+        assertThat(ranges).allMatch(range -> range.startsWith("bytes=") && range.endsWith(" " + ETAG))
+                .noneMatch(range -> range.startsWith("bytes=0-"));
+        // the part that failed is requested again
+        assertThat(new HashSet<>(ranges)).hasSize(3).hasSizeLessThan(ranges.size());
+    }
+
+    private File download() throws IOException {
+        File target = tempDir.resolve("downloaded").toFile();
+        URI url = URI.create("http://localhost:" + server.getAddress().getPort() + "/file");
+        new ResumableDownload(url, target).run(client);
+        return target;
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        requests.add(range == null ? "" : range + " " + ifRange);
+        if (range != null && failedRanges.getAndUpdate(count -> Math.max(0, count - 1)) > 0) {
+            exchange.getResponseHeaders().add("Connection", "close");
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+            return;
+        }
+
+        byte[] data = content;
+        int from = 0;
+        int to = data.length - 1;
+        int status = 200;
+        exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+        exchange.getResponseHeaders().add("ETag", etag);
+        if (range != null && etag.equals(ifRange)) {
+            String[] bounds = range.substring("bytes=".length()).split("-", -1);
+            from = Integer.parseInt(bounds[0]);
+            to = bounds[1].isEmpty() ? to : Integer.parseInt(bounds[1]);
+            status = 206;
+            exchange.getResponseHeaders().add("Content-Range", "bytes " + from + "-" + to + "/" + data.length);
+        }
+        int length = to - from + 1;
+        exchange.sendResponseHeaders(status, length);
+
+        if (truncated.getAndUpdate(count -> Math.max(0, count - 1)) > 0) {
+            exchange.getResponseBody().write(data, from, length / 2);
+            exchange.getResponseBody().flush();
+            if (changedContent != null) {
+                content = changedContent;
+                etag = "\"v2\"";
+            }
+            // the server closes the connection if the handler fails
+            throw new IOException("Response truncated");
+        }
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(data, from, length);
+        } catch (IOException e) {
+            // the response was aborted by the client
+        }
+    }
+
+    private static byte[] randomContent(int length) {
+        byte[] result = new byte[length];
+        new Random(length).nextBytes(result);
+        return result;
+    }
+
+    private static void assertContent(File file, byte[] expected) throws IOException {
+        byte[] actual = Files.readAllBytes(file.toPath());
+        assertThat(actual).hasSize(expected.length);
+        // not compared with isEqualTo, which would print the whole content on a failure
+        assertThat(Arrays.equals(actual, expected)).as("content of %s", file).isTrue();
+    }
+}
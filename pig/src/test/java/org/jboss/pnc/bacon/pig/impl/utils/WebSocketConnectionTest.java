@@ -0,0 +1,203 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.bacon.pig.impl.utils;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests of the WebSocket client against a local stand-in of a WebSocket server
+ */
+class WebSocketConnectionTest {
+
+    private static final int TIMEOUT = 5_000;
+    private static final int PING_INTERVAL = 200;
+
+    private WebSocketServerStub server;
+    private WebSocketConnection connection;
+    private final BlockingQueue<String> messages = new LinkedBlockingQueue<>();
+    private final CountDownLatch closed = new CountDownLatch(1);
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new WebSocketServerStub();
+    }
+
+    @AfterEach
+    void stopServer() throws IOException {
+        if (connection != null) {
+            connection.close();
+        }
+        server.close();
+    }
+
+    @Test
+    void shouldPingIdleServer() throws Exception {
+        connect(server.getUri());
+
+        Thread.sleep(5 * PING_INTERVAL);
+
+        assertThat(server.getPingCount()).isGreaterThanOrEqualTo(2);
+        assertThat(connection.isOpen()).isTrue();
+    }
+
+    @Test
+    void shouldCloseConnectionIfServerDoesNotAnswerPing() throws Exception {
+        server.setAnsweringPings(false);
+        connect(server.getUri());
+
+        assertThat(closed.await(TIMEOUT, TimeUnit.MILLISECONDS)).isTrue();
+        assertThat(connection.isOpen()).isFalse();
+        assertThat(server.getPingCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRejectTooLongHandshakeResponse() throws Exception {
+        try (ServerSocket endlessServer = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            start(() -> {
+                try (Socket socket = endlessServer.accept(); OutputStream output = socket.getOutputStream()) {
+                    output.write("HTTP/1.1 101 ".getBytes(StandardCharsets.US_ASCII));
+                    byte[] line = new byte[1024];
+                    while (true) {
+                        output.write(line);
+                    }
+                } catch (IOException e) {
+                    // closed by the client
+                }
+            });
+            URI uri = URI.create("ws://localhost:" + endlessServer.getLocalPort() + "/");
+
+            assertThatThrownBy(() -> connect(uri)).isInstanceOf(IOException.class).hasMessageContaining("longer than");
+        }
+    }
+
+    @Test
+    void shouldConnectThroughHttpProxy() throws Exception {
+        ProxySelector defaultSelector = ProxySelector.getDefault();
+        try (ConnectProxy proxy = new ConnectProxy()) {
+            ProxySelector.setDefault(new ProxySelector() {
+                @Override
+                public List<Proxy> select(URI uri) {
+                    return Collections.singletonList(new Proxy(Proxy.Type.HTTP, proxy.getAddress()));
+                }
+
+                @Override
+                public void connectFailed(URI uri, SocketAddress address, IOException e) {
+                }
+            });
+            connect(server.getUri());
+            WebSocketServerStub.send(server.awaitConnection(), "through the proxy");
+
+            assertThat(messages.poll(TIMEOUT, TimeUnit.MILLISECONDS)).isEqualTo("through the proxy");
+            assertThat(proxy.getRequestLine()).isEqualTo("CONNECT localhost:" + server.getUri().getPort() + " HTTP/1.1");
+        } finally {
+            ProxySelector.setDefault(defaultSelector);
+        }
+    }
+
+    private void connect(URI uri) throws IOException {
+        connection = WebSocketConnection.open(uri, TIMEOUT, PING_INTERVAL, messages::add, closed::countDown);
+    }
+
+    private static void start(Runnable task) {
+        Thread thread = new Thread(task, "websocket-test");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * HTTP proxy that tunnels a single connection
+     */
+    private static class ConnectProxy implements AutoCloseable {
+        private final ServerSocket proxy = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        private final CompletableFuture<String> requestLine = new CompletableFuture<>();
+
+        private ConnectProxy() throws IOException {
+            start(this::tunnel);
+        }
+
+        private InetSocketAddress getAddress() {
+            return InetSocketAddress.createUnresolved("localhost", proxy.getLocalPort());
+        }
+
+        private String getRequestLine() throws Exception {
+            return requestLine.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+
+        private void tunnel() {
+            try (Socket client = proxy.accept()) {
+                InputStream clientInput = client.getInputStream();
+                BufferedReader reader = new BufferedReader(new InputStreamReader(clientInput, StandardCharsets.US_ASCII));
+                String request = reader.readLine();
+                while (!reader.readLine().isEmpty()) {
+                    // skip the headers, the client sends nothing else before the response
+                }
+                requestLine.complete(request);
+                String[] hostAndPort = request.split(" ")[1].split(":");
+                try (Socket target = new Socket(hostAndPort[0], Integer.parseInt(hostAndPort[1]))) {
+                    client.getOutputStream()
+                            .write("HTTP/1.1 200 Connection established\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                    start(() -> pipe(target, client));
+                    pipe(client, target);
+                }
+            } catch (IOException e) {
+                requestLine.completeExceptionally(e);
+            }
+        }
+
+        private static void pipe(Socket from, Socket to) {
+            try {
+                IOUtils.copy(from.getInputStream(), to.getOutputStream());
+            } catch (IOException e) {
+                // one of the sockets is closed
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            proxy.close();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2020 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.pnc.bacon.pig.impl.utils;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in of a WebSocket server for tests. It accepts connections, completes their opening handshakes, sends text
+ * messages and answers pings.
+ */
+public class WebSocketServerStub implements Closeable {
+
+    private static final int PING = 0x9;
+    private static final int PONG = 0xA;
+    private static final int CLOSE = 0x8;
+
+    private final ServerSocket server;
+    private final BlockingQueue<Socket> accepted = new LinkedBlockingQueue<>();
+    private final List<Socket> connections = new CopyOnWriteArrayList<>();
+    private final AtomicInteger pings = new AtomicInteger();
+    private volatile boolean answeringPings = true;
+
+    public WebSocketServerStub() throws IOException {
+        server = new ServerSocket(0, 10, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::acceptAll, "websocket-server-stub");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public URI getUri() {
+        return URI.create("ws://localhost:" + server.getLocalPort() + "/pnc-rest/v2/notifications");
+    }
+
+    /**
+     * @return the next connection whose opening handshake is completed
+     */
+    public Socket awaitConnection() throws InterruptedException {
+        Socket connection = accepted.poll(5, TimeUnit.SECONDS);
+        if (connection == null) {
+            throw new IllegalStateException("No WebSocket connection accepted");
+        }
+        return connection;
+    }
+
+    /**
+     * @return number of connections accepted so far
+     */
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    public int getPingCount() {
+        return pings.get();
+    }
+
+    public void setAnsweringPings(boolean answeringPings) {
+        this.answeringPings = answeringPings;
+    }
+
+    /**
+     * Send an unmasked text frame, as a server does
+     */
+    public static void send(Socket connection, String message) throws IOException {
+        write(connection, 0x1, message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        for (Socket connection : connections) {
+            connection.close();
+        }
+    }
+
+    private void acceptAll() {
+        try {
+            while (!server.isClosed()) {
+                Socket connection = server.accept();
+                connections.add(connection);
+                handshake(connection);
+                Thread reader = new Thread(() -> read(connection), "websocket-server-stub-reader");
+                reader.setDaemon(true);
+                reader.start();
+                accepted.add(connection);
+            }
+        } catch (IOException e) {
+            // the server is closed
+        }
+    }
+
+    private static void handshake(Socket connection) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(connection.getInputStream(), StandardCharsets.US_ASCII));
+        String key = null;
+        String line;
+        while (!(line = reader.readLine()).isEmpty()) {
+            if (line.startsWith("Sec-WebSocket-Key:")) {
+                key = line.substring(line.indexOf(':') + 1).trim();
+            }
+        }
+        String response = "HTTP/1.1 101 Switching Protocols\r\n" + "Upgrade: websocket\r\n" + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + WebSocketConnection.acceptFor(key) + "\r\n" + "\r\n";
+        connection.getOutputStream().write(response.getBytes(StandardCharsets.US_ASCII));
+        connection.getOutputStream().flush();
+    }
+
+    /**
+     * Read the frames sent by the client, they are small and masked
+     */
+    private void read(Socket connection) {
+        try {
+            DataInputStream input = new DataInputStream(connection.getInputStream());
+            while (true) {
+                int opcode = input.readUnsignedByte() & 0x0F;
+                int length = input.readUnsignedByte() & 0x7F;
+                byte[] mask = new byte[4];
+                input.readFully(mask);
+                byte[] payload = new byte[length];
+                input.readFully(payload);
+                for (int i = 0; i < payload.length; i++) {
+                    payload[i] ^= mask[i % 4];
+                }
+                if (opcode == PING) {
+                    pings.incrementAndGet();
+                    if (answeringPings) {
+                        write(connection, PONG, payload);
+                    }
+                } else if (opcode == CLOSE) {
+                    connection.close();
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // the connection is closed
+        }
+    }
+
+    private static void write(Socket connection, int opcode, byte[] payload) throws IOException {
+        synchronized (connection) {
+            OutputStream output = connection.getOutputStream();
+            output.write(0x80 | opcode);
+            if (payload.length < 126) {
+                output.write(payload.length);
+            } else {
+                output.write(126);
+                output.write(payload.length >> 8);
+                output.write(payload.length);
+            }
+            output.write(payload);
+            output.flush();
+        }
+    }
+}
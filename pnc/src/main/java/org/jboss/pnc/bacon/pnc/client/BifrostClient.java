@@ -2,8 +2,9 @@ package org.jboss.pnc.bacon.pnc.client;
 
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.HttpClients;
+import org.jboss.pnc.bacon.common.http.HttpTransport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,7 +27,7 @@ public class BifrostClient {
 
     public BifrostClient(URI baseUrl) {
         this.baseUrl = baseUrl;
-        client = HttpClients.createDefault();
+        client = HttpTransport.client();
     }
 
     public void writeLog(String id, boolean follow, Consumer<String> onLine) throws IOException {
@@ -43,6 +44,10 @@ public class BifrostClient {
         logger.debug("Reading logs from {}.", logsUrl.toString());
 
         HttpGet httpGet = new HttpGet(logsUrl);
+        if (follow) {
+            // followed logs can stay silent for a long time
+            httpGet.setConfig(RequestConfig.copy(HttpTransport.defaultRequestConfig()).setSocketTimeout(0).build());
+        }
 
         HttpResponse response = client.execute(httpGet);
         try (InputStream inputStream = response.getEntity().getContent();